@@ -0,0 +1,97 @@
+package pl.edu.agh.iisg.to.benchmark;
+
+import pl.edu.agh.iisg.to.connection.ConnectionProfile;
+import pl.edu.agh.iisg.to.connection.ConnectionProvider;
+import pl.edu.agh.iisg.to.executor.QueryExecutor;
+import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.Grade;
+import pl.edu.agh.iisg.to.model.Student;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the model workloads (create, enroll, grade, report) against a fresh database file
+ * for every {@link ConnectionProfile} and prints the time spent in each phase.
+ * Usage: {@code gradle profileBenchmark --args="<students> <courses>"}.
+ */
+public final class ProfileBenchmark {
+
+    private static final int DEFAULT_STUDENTS = 2_000;
+
+    private static final int DEFAULT_COURSES = 20;
+
+    private ProfileBenchmark() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int students = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STUDENTS;
+        int courses = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_COURSES;
+        Logger.getGlobal().setLevel(Level.WARNING);
+
+        System.out.printf("%-12s %10s %10s %10s %10s%n", "profile", "create ms", "enroll ms", "grade ms", "report ms");
+        for (ConnectionProfile profile : ConnectionProfile.values()) {
+            long[] result = run(profile, students, courses);
+            System.out.printf("%-12s %10d %10d %10d %10d%n", profile, result[0], result[1], result[2], result[3]);
+        }
+        ConnectionProvider.close();
+    }
+
+    private static long[] run(final ConnectionProfile profile, final int studentCount, final int courseCount)
+            throws IOException, SQLException {
+        Path dbFile = Files.createTempFile("profile-benchmark-", ".db");
+        try {
+            ConnectionProvider.init("jdbc:sqlite:" + dbFile, profile);
+            QueryExecutor.createTables();
+
+            long start = System.nanoTime();
+            List<Student> students = new ArrayList<>(studentCount);
+            for (int i = 0; i < studentCount; i++) {
+                Student.create("First" + i, "Last" + i, 100_000 + i).ifPresent(students::add);
+            }
+            List<Course> courses = new ArrayList<>(courseCount);
+            for (int i = 0; i < courseCount; i++) {
+                Course.create("Course " + i).ifPresent(courses::add);
+            }
+            long created = System.nanoTime();
+
+            for (int i = 0; i < students.size(); i++) {
+                courses.get(i % courses.size()).enrollStudent(students.get(i));
+            }
+            long enrolled = System.nanoTime();
+
+            for (int i = 0; i < students.size(); i++) {
+                Grade.gradeStudent(students.get(i), courses.get(i % courses.size()), 2.0f + i % 4);
+            }
+            long graded = System.nanoTime();
+
+            for (Course course : courses) {
+                course.studentList();
+            }
+            for (Student student : students) {
+                student.createReport();
+            }
+            long reported = System.nanoTime();
+
+            ConnectionProvider.close();
+            return new long[]{
+                    TimeUnit.NANOSECONDS.toMillis(created - start),
+                    TimeUnit.NANOSECONDS.toMillis(enrolled - created),
+                    TimeUnit.NANOSECONDS.toMillis(graded - enrolled),
+                    TimeUnit.NANOSECONDS.toMillis(reported - graded)
+            };
+        } finally {
+            for (String suffix : new String[]{"", "-wal", "-shm", "-journal"}) {
+                Files.deleteIfExists(Path.of(dbFile + suffix));
+            }
+        }
+    }
+}
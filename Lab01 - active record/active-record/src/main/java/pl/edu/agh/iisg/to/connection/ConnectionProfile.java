@@ -0,0 +1,93 @@
+package pl.edu.agh.iisg.to.connection;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public enum ConnectionProfile {
+
+    // SQLite defaults: rollback journal and fsync on every commit
+    DURABLE("DELETE", "FULL", -2_000, 0L, "DEFAULT", 5_000),
+
+    BALANCED("WAL", "NORMAL", -16_000, 64L * 1024 * 1024, "MEMORY", 5_000),
+
+    // not crash safe, meant to be switched on only around bulk operations
+    BULK_LOAD("MEMORY", "OFF", -64_000, 256L * 1024 * 1024, "MEMORY", 10_000),
+
+    READ_MOSTLY("WAL", "NORMAL", -64_000, 256L * 1024 * 1024, "MEMORY", 5_000);
+
+    private final String journalMode;
+
+    private final String synchronous;
+
+    // negative values are expressed in KiB, positive ones in pages
+    private final int cacheSize;
+
+    private final long mmapSize;
+
+    private final String tempStore;
+
+    private final int busyTimeoutMillis;
+
+    ConnectionProfile(final String journalMode, final String synchronous, final int cacheSize,
+                      final long mmapSize, final String tempStore, final int busyTimeoutMillis) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.tempStore = tempStore;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+    }
+
+    /**
+     * Sets the pragmas of the profile on the connection. SQLite answers a journal mode change with the mode it
+     * actually uses, e.g. MEMORY instead of WAL for an in-memory database or when the file is locked, and the
+     * profile is refused then. A refused profile leaves the connection's pragmas as they were.
+     */
+    public void apply(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // set first, so the journal mode change waits for the locks of other connections; restored when refused
+            int previousBusyTimeout;
+            try (ResultSet result = statement.executeQuery("PRAGMA busy_timeout")) {
+                previousBusyTimeout = result.next() ? result.getInt(1) : 0;
+            }
+            statement.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+            try (ResultSet result = statement.executeQuery("PRAGMA journal_mode = " + journalMode)) {
+                String actual = result.next() ? result.getString(1) : null;
+                if (!journalMode.equalsIgnoreCase(actual)) {
+                    statement.execute("PRAGMA busy_timeout = " + previousBusyTimeout);
+                    throw new SQLException("Journal mode " + journalMode + " was refused, SQLite uses " + actual);
+                }
+            }
+            statement.execute("PRAGMA synchronous = " + synchronous);
+            statement.execute("PRAGMA cache_size = " + cacheSize);
+            statement.execute("PRAGMA mmap_size = " + mmapSize);
+            statement.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+
+    public String journalMode() {
+        return journalMode;
+    }
+
+    public String synchronous() {
+        return synchronous;
+    }
+
+    public int cacheSize() {
+        return cacheSize;
+    }
+
+    public long mmapSize() {
+        return mmapSize;
+    }
+
+    public String tempStore() {
+        return tempStore;
+    }
+
+    public int busyTimeoutMillis() {
+        return busyTimeoutMillis;
+    }
+}
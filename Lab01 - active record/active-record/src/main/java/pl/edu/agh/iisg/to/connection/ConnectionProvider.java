@@ -3,7 +3,8 @@ package pl.edu.agh.iisg.to.connection;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 public final class ConnectionProvider {
@@ -14,21 +15,67 @@ public final class ConnectionProvider {
 
     private static final Logger logger = Logger.getGlobal();
 
-    private static Optional<Connection> connection = Optional.empty();
+    private static final ConnectionProfile DEFAULT_PROFILE = ConnectionProfile.DURABLE;
+
+    // student ids of shard n start at n * STUDENT_ID_RANGE, so an id identifies its shard
+    public static final int STUDENT_ID_RANGE = 100_000_000;
+
+    public static final int MAX_SHARDS = Integer.MAX_VALUE / STUDENT_ID_RANGE;
+
+    private static List<Connection> connections = List.of();
+
+    private static final ThreadLocal<Integer> currentShard = ThreadLocal.withInitial(() -> 0);
+
+    private static ConnectionProfile profile = DEFAULT_PROFILE;
 
     static {
         init(JDBC_ADDRESS);
     }
 
     public static void init(final String jdbcAddress) {
+        init(jdbcAddress, DEFAULT_PROFILE);
+    }
+
+    public static void init(final String jdbcAddress, final ConnectionProfile connectionProfile) {
+        initSharded(List.of(jdbcAddress), connectionProfile);
+    }
+
+    public static void initSharded(final List<String> jdbcAddresses) {
+        initSharded(jdbcAddresses, DEFAULT_PROFILE);
+    }
+
+    /**
+     * Opens one writer connection per database file. Students, together with their grades and
+     * enrollments, are partitioned across the files by index number; courses are replicated to every shard.
+     */
+    public static void initSharded(final List<String> jdbcAddresses, final ConnectionProfile connectionProfile) {
+        if (jdbcAddresses.isEmpty() || jdbcAddresses.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("Number of shards must be between 1 and " + MAX_SHARDS);
+        }
         try {
             close();
             logger.info("Loading driver");
             Class.forName(JDBC_DRIVER);
-            connection = Optional.of(DriverManager.getConnection(jdbcAddress));
-            logger.info("Connection created");
+            List<Connection> opened = new ArrayList<>(jdbcAddresses.size());
+            for (String jdbcAddress : jdbcAddresses) {
+                opened.add(DriverManager.getConnection(jdbcAddress));
+            }
+            connections = List.copyOf(opened);
+            logger.info(connections.size() == 1 ? "Connection created" : connections.size() + " shard connections created");
         } catch (Exception e) {
             logger.info("Error during initialization: " + e.getMessage());
+            return;
+        }
+        try {
+            applyProfile(connectionProfile);
+        } catch (SQLException e) {
+            // the shards that accepted the profile would keep it while getProfile reports the previous one
+            try {
+                close();
+            } catch (SQLException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw new RuntimeException("Connection profile " + connectionProfile + " was refused", e);
         }
     }
 
@@ -36,16 +83,97 @@ public final class ConnectionProvider {
         throw new UnsupportedOperationException();
     }
 
+    // connection of the shard the current thread is routed to, see QueryExecutor.onShard
     public static Connection getConnection() {
-        return connection.orElseThrow(() -> new RuntimeException("Connection is not valid."));
+        return getConnection(currentShard.get());
+    }
+
+    public static Connection getConnection(final int shard) {
+        if (shard < 0 || shard >= connections.size()) {
+            throw new RuntimeException("Connection is not valid.");
+        }
+        return connections.get(shard);
+    }
+
+    public static int shardCount() {
+        return Math.max(connections.size(), 1);
+    }
+
+    public static boolean isSharded() {
+        return connections.size() > 1;
+    }
+
+    public static int currentShard() {
+        return currentShard.get();
+    }
+
+    public static void routeTo(final int shard) {
+        currentShard.set(shard);
+    }
+
+    public static int shardForIndexNumber(final int indexNumber) {
+        // spread consecutive index numbers (e.g. one year's students) evenly across shards; the shard depends on
+        // the shard count, so QueryExecutor.createTables refuses files written with a different count
+        return Math.floorMod(indexNumber * 0x9E3779B9, shardCount());
+    }
+
+    public static int shardForStudentId(final int studentId) {
+        return Math.min(Math.max(studentId, 0) / STUDENT_ID_RANGE, shardCount() - 1);
+    }
+
+    public static ConnectionProfile getProfile() {
+        return profile;
+    }
+
+    public static void applyProfile(final ConnectionProfile connectionProfile) throws SQLException {
+        if (connections.isEmpty()) {
+            throw new RuntimeException("Connection is not valid.");
+        }
+        for (Connection connection : connections) {
+            connectionProfile.apply(connection);
+        }
+        profile = connectionProfile;
+        logger.info("Connection profile " + connectionProfile + " applied");
+    }
+
+    /**
+     * Switches the connection to the given profile until the returned scope is closed,
+     * e.g. {@code try (var bulkLoad = ConnectionProvider.switchProfile(ConnectionProfile.BULK_LOAD)) { ... }}.
+     * Journal mode cannot be changed inside a transaction, so the scope must not span one.
+     */
+    public static ProfileScope switchProfile(final ConnectionProfile connectionProfile) throws SQLException {
+        ConnectionProfile previous = profile;
+        applyProfile(connectionProfile);
+        return new ProfileScope(previous);
     }
 
     public static void close() throws SQLException {
-        if (connection.isPresent()) {
+        if (!connections.isEmpty()) {
             logger.info("Closing connection");
-            connection.get().close();
-            connection = Optional.empty();
+            List<Connection> toClose = connections;
+            connections = List.of();
+            for (Connection connection : toClose) {
+                connection.close();
+            }
         }
     }
 
+    public static final class ProfileScope implements AutoCloseable {
+
+        private final ConnectionProfile previous;
+
+        private ProfileScope(final ConnectionProfile previous) {
+            this.previous = previous;
+        }
+
+        // the profile restored when the scope is closed
+        public ConnectionProfile previous() {
+            return previous;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            applyProfile(previous);
+        }
+    }
 }
@@ -3,68 +3,188 @@ package pl.edu.agh.iisg.to.executor;
 import pl.edu.agh.iisg.to.connection.ConnectionProvider;
 import pl.edu.agh.iisg.to.query.QueryHelper;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 public final class QueryExecutor {
 
     private static final Logger LOGGER = Logger.getGlobal();
 
+    private static final int SQLITE_BUSY = 5;
+
+    private static final int SQLITE_LOCKED = 6;
+
+    private static final LongAdder lockContentions = new LongAdder();
+
     private QueryExecutor() {
         throw new UnsupportedOperationException();
     }
 
     static {
         try {
-            LOGGER.info("Creating table Student");
-            create("CREATE TABLE IF NOT EXISTS student (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "first_name VARCHAR(50) NOT NULL, " +
-                    "last_name VARCHAR(50) NOT NULL, " +
-                    "index_number int NOT NULL, " +
-                    "UNIQUE (index_number) " +
-                    ");");
-            LOGGER.info("Creating table Course");
-            create("CREATE TABLE IF NOT EXISTS course (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "name VARCHAR(50) NOT NULL, " +
-                    "UNIQUE (name) " +
-                    ");");
-            LOGGER.info("Creating table Student_Course");
-            create("CREATE TABLE IF NOT EXISTS student_course (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "student_id INT NOT NULL, " +
-                    "course_id INT NOT NULL, " +
-                    "FOREIGN KEY(student_id) references student (id), " +
-                    "FOREIGN KEY(course_id) references course (id), " +
-                    "UNIQUE (student_id, course_id)" +
-                    ");");
-            LOGGER.info("Creating table Grade");
-            create("CREATE TABLE IF NOT EXISTS grade (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "grade REAL NOT NULL, " +
-                    "student_id INT NOT NULL, " +
-                    "course_id INT NOT NULL, " +
-                    "FOREIGN KEY(student_id) references student (id), " +
-                    "FOREIGN KEY(course_id) references course (id) " +
-                    ");");
-
+            createTables();
         } catch (SQLException e) {
             LOGGER.info("Error during create tables: " + e.getMessage());
             throw new RuntimeException("Cannot create tables");
         }
     }
 
+    /**
+     * Creates the tables on every shard. A file that already holds data for another shard number or shard count
+     * is refused, since students are assigned to shards by their index number modulo the shard count.
+     */
+    public static void createTables() throws SQLException {
+        for (int shard = 0; shard < ConnectionProvider.shardCount(); shard++) {
+            final int shardNumber = shard;
+            onShard(shard, () -> {
+                createShardTables();
+                checkShardLayout(shardNumber);
+                reserveStudentIdRange(shardNumber);
+                return null;
+            });
+        }
+    }
+
+    private static void createShardTables() throws SQLException {
+        LOGGER.info("Creating table Student");
+        create("CREATE TABLE IF NOT EXISTS student (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "first_name VARCHAR(50) NOT NULL, " +
+                "last_name VARCHAR(50) NOT NULL, " +
+                "index_number int NOT NULL, " +
+                "UNIQUE (index_number) " +
+                ");");
+        LOGGER.info("Creating table Course");
+        create("CREATE TABLE IF NOT EXISTS course (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "name VARCHAR(50) NOT NULL, " +
+                "UNIQUE (name) " +
+                ");");
+        LOGGER.info("Creating table Student_Course");
+        create("CREATE TABLE IF NOT EXISTS student_course (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "student_id INT NOT NULL, " +
+                "course_id INT NOT NULL, " +
+                "FOREIGN KEY(student_id) references student (id), " +
+                "FOREIGN KEY(course_id) references course (id), " +
+                "UNIQUE (student_id, course_id)" +
+                ");");
+        LOGGER.info("Creating table Grade");
+        create("CREATE TABLE IF NOT EXISTS grade (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "grade REAL NOT NULL, " +
+                "student_id INT NOT NULL, " +
+                "course_id INT NOT NULL, " +
+                "FOREIGN KEY(student_id) references student (id), " +
+                "FOREIGN KEY(course_id) references course (id) " +
+                ");");
+    }
+
+    private static void checkShardLayout(final int shard) throws SQLException {
+        int shardCount = ConnectionProvider.shardCount();
+        create("CREATE TABLE IF NOT EXISTS shard_layout (" +
+                "shard INT NOT NULL, " +
+                "shard_count INT NOT NULL" +
+                ");");
+        try (ResultSet layout = read("SELECT shard, shard_count FROM shard_layout")) {
+            if (layout.next()) {
+                if (layout.getInt("shard") != shard || layout.getInt("shard_count") != shardCount) {
+                    throw new SQLException(String.format("Shard %d of %d cannot open a file written as shard %d of %d",
+                            shard, shardCount, layout.getInt("shard"), layout.getInt("shard_count")));
+                }
+                return;
+            }
+        }
+        // a file from before the layout was recorded holds the data of a single database
+        try (ResultSet students = read("SELECT 1 FROM student LIMIT 1")) {
+            if (students.next() && shardCount > 1) {
+                throw new SQLException("Shard " + shard + " of " + shardCount + " cannot open a file with unsharded data");
+            }
+        }
+        create("INSERT INTO shard_layout (shard, shard_count) VALUES (?, ?)", shard, shardCount);
+    }
+
+    private static void reserveStudentIdRange(final int shard) throws SQLException {
+        if (shard == 0) {
+            return;
+        }
+        create("INSERT INTO sqlite_sequence (name, seq) SELECT 'student', ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = 'student')",
+                shard * ConnectionProvider.STUDENT_ID_RANGE);
+    }
+
+    /**
+     * Runs the query with every statement of the current thread routed to the given shard.
+     */
+    public static <T> T onShard(final int shard, final ShardQuery<T> query) throws SQLException {
+        int previous = ConnectionProvider.currentShard();
+        ConnectionProvider.routeTo(shard);
+        try {
+            return query.execute();
+        } finally {
+            ConnectionProvider.routeTo(previous);
+        }
+    }
+
+    /**
+     * Runs the query on every shard, in parallel when there is more than one,
+     * and returns the per-shard results in shard order.
+     */
+    public static <T> List<T> onAllShards(final ShardQuery<T> query) throws SQLException {
+        int shardCount = ConnectionProvider.shardCount();
+        List<T> results = new ArrayList<>(shardCount);
+        if (shardCount == 1) {
+            results.add(onShard(0, query));
+            return results;
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<T>> futures = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                final int shardNumber = shard;
+                futures.add(executor.submit(() -> onShard(shardNumber, query)));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while querying shards", e);
+        }
+        return results;
+    }
+
+    // statements of all threads share the shard's connection; they are run while holding its monitor,
+    // so a statement never runs inside a transaction executeUpdate has open on that connection
     public static int createAndObtainId(final String insertSql, Object... args) throws SQLException {
-        PreparedStatement statement = ConnectionProvider.getConnection().prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS);
-        QueryHelper.mapParams(statement, args);
-        statement.execute();
-        try (final ResultSet resultSet = statement.getGeneratedKeys()) {
-            return readIdFromResultSet(resultSet);
+        Connection connection = ConnectionProvider.getConnection();
+        try {
+            synchronized (connection) {
+                PreparedStatement statement = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS);
+                QueryHelper.mapParams(statement, args);
+                statement.execute();
+                try (final ResultSet resultSet = statement.getGeneratedKeys()) {
+                    return readIdFromResultSet(resultSet);
+                }
+            }
+        } catch (SQLException e) {
+            throw recordFailure(e);
         }
     }
 
@@ -73,34 +193,94 @@ public final class QueryExecutor {
     }
 
     public static void create(final String insertSql, Object... args) throws SQLException {
-        PreparedStatement ps = ConnectionProvider.getConnection().prepareStatement(insertSql);
-        QueryHelper.mapParams(ps, args);
-        ps.execute();
+        Connection connection = ConnectionProvider.getConnection();
+        try {
+            synchronized (connection) {
+                PreparedStatement ps = connection.prepareStatement(insertSql);
+                QueryHelper.mapParams(ps, args);
+                ps.execute();
+            }
+        } catch (SQLException e) {
+            throw recordFailure(e);
+        }
     }
 
     public static ResultSet read(final String sql, Object... args) throws SQLException {
-        PreparedStatement ps = ConnectionProvider.getConnection().prepareStatement(sql);
-        QueryHelper.mapParams(ps, args);
-        final ResultSet resultSet = ps.executeQuery();
-        LOGGER.info(String.format("Query: %s executed.", sql));
-        return resultSet;
+        Connection connection = ConnectionProvider.getConnection();
+        try {
+            synchronized (connection) {
+                PreparedStatement ps = connection.prepareStatement(sql);
+                QueryHelper.mapParams(ps, args);
+                final ResultSet resultSet = ps.executeQuery();
+                LOGGER.info(String.format("Query: %s executed.", sql));
+                return resultSet;
+            }
+        } catch (SQLException e) {
+            throw recordFailure(e);
+        }
     }
 
     public static void delete(final String sql, Object... args) throws SQLException {
-        PreparedStatement ps = ConnectionProvider.getConnection().prepareStatement(sql);
-        QueryHelper.mapParams(ps, args);
-        ps.executeUpdate();
+        Connection connection = ConnectionProvider.getConnection();
+        try {
+            synchronized (connection) {
+                PreparedStatement ps = connection.prepareStatement(sql);
+                QueryHelper.mapParams(ps, args);
+                ps.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw recordFailure(e);
+        }
     }
 
+    // runs the statements in one transaction, which holds the connection until it is committed or rolled back
     public static void executeUpdate(final List<String> sql, List<List<Object>> args) throws SQLException {
-        ConnectionProvider.getConnection().setAutoCommit(false);
-        for (int i = 0; i < sql.size(); i++) {
-            PreparedStatement ps = ConnectionProvider.getConnection().prepareStatement(sql.get(i));
-            QueryHelper.mapParams(ps, args.get(i));
-            ps.executeUpdate();
-            LOGGER.info(String.format("Query: %s executed.", sql.get(i)));
+        Connection connection = ConnectionProvider.getConnection();
+        synchronized (connection) {
+            try {
+                connection.setAutoCommit(false);
+                for (int i = 0; i < sql.size(); i++) {
+                    PreparedStatement ps = connection.prepareStatement(sql.get(i));
+                    QueryHelper.mapParams(ps, args.get(i).toArray());
+                    ps.executeUpdate();
+                    LOGGER.info(String.format("Query: %s executed.", sql.get(i)));
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                rollback(connection, e);
+                throw recordFailure(e);
+            } catch (RuntimeException e) {
+                // turning autocommit back on would commit the statements run so far
+                rollback(connection, e);
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void rollback(final Connection connection, final Exception cause) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    // number of statements rejected with SQLITE_BUSY or SQLITE_LOCKED since the last reset
+    public static long lockContentionCount() {
+        return lockContentions.sum();
+    }
+
+    public static void resetStatistics() {
+        lockContentions.reset();
+    }
+
+    private static SQLException recordFailure(final SQLException e) {
+        int primaryCode = e.getErrorCode() & 0xff;
+        if (primaryCode == SQLITE_BUSY || primaryCode == SQLITE_LOCKED) {
+            lockContentions.increment();
         }
-        ConnectionProvider.getConnection().commit();
-        ConnectionProvider.getConnection().setAutoCommit(true);
+        return e;
     }
 }
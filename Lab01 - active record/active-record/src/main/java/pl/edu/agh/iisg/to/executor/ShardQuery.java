@@ -0,0 +1,9 @@
+package pl.edu.agh.iisg.to.executor;
+
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface ShardQuery<T> {
+
+    T execute() throws SQLException;
+}
@@ -0,0 +1,176 @@
+package pl.edu.agh.iisg.to.load;
+
+import pl.edu.agh.iisg.to.connection.ConnectionProvider;
+import pl.edu.agh.iisg.to.executor.QueryExecutor;
+import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.Grade;
+import pl.edu.agh.iisg.to.model.Student;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drives a configurable mix of model operations from many threads against the shared connection
+ * for a fixed duration. Operations that fail (empty result or {@code false}) are counted as errors,
+ * statements rejected by SQLite locking are reported as lock contentions.
+ * Usage: {@code gradle loadTest --args="<threads> <seconds> <virtual|platform> <mix>"},
+ * e.g. {@code --args="16 30 virtual create=1,enroll=2,grade=4,report=3"}.
+ */
+public class LoadGenerator {
+
+    private static final int COURSE_COUNT = 10;
+
+    private static final int SEED_STUDENTS = 100;
+
+    private final int threads;
+
+    private final Duration duration;
+
+    private final boolean virtualThreads;
+
+    private final OperationMix mix;
+
+    private final List<Student> students = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<Course> courses = new ArrayList<>();
+
+    private final AtomicInteger nextIndexNumber = new AtomicInteger();
+
+    private final AtomicInteger nextEnrollment = new AtomicInteger();
+
+    public LoadGenerator(final int threads, final Duration duration, final boolean virtualThreads, final OperationMix mix) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threads = threads;
+        this.duration = duration;
+        this.virtualThreads = virtualThreads;
+        this.mix = mix;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 10);
+        boolean virtualThreads = args.length <= 2 || "virtual".equalsIgnoreCase(args[2]);
+        OperationMix mix = OperationMix.parse(args.length > 3 ? args[3] : "create=1,enroll=2,grade=4,report=3");
+        Logger.getGlobal().setLevel(Level.WARNING);
+
+        new LoadGenerator(threads, duration, virtualThreads, mix).run().print(System.out);
+        ConnectionProvider.close();
+    }
+
+    public LoadReport run() throws InterruptedException {
+        seed();
+        QueryExecutor.resetStatistics();
+
+        LoadReport report = new LoadReport();
+        ThreadFactory factory = virtualThreads
+                ? Thread.ofVirtual().name("load-", 0).factory()
+                : Thread.ofPlatform().name("load-", 0).factory();
+
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(factory)) {
+            for (int i = 0; i < threads; i++) {
+                executor.submit(() -> work(deadline, report));
+            }
+        }
+        report.complete(Duration.ofNanos(System.nanoTime() - start), QueryExecutor.lockContentionCount());
+        return report;
+    }
+
+    private void seed() {
+        // index numbers and course names are made unique per run so repeated runs on one database do not collide
+        int runId = (int) (System.currentTimeMillis() % 100_000);
+        nextIndexNumber.set(runId * 10_000);
+        for (int i = 0; i < COURSE_COUNT; i++) {
+            Course.create("Load " + runId + " " + i).ifPresent(courses::add);
+        }
+        if (courses.isEmpty()) {
+            throw new IllegalStateException("Cannot create courses for the load test");
+        }
+        for (int i = 0; i < SEED_STUDENTS; i++) {
+            createStudent();
+        }
+    }
+
+    private void work(final long deadline, final LoadReport report) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            Operation operation = mix.next(random);
+            int enrollment = operation == Operation.ENROLL ? claimEnrollment() : -1;
+            if (operation == Operation.ENROLL && enrollment < 0) {
+                // every student is enrolled already, the new student is recorded as the create it is
+                operation = Operation.CREATE;
+            }
+            long start = System.nanoTime();
+            boolean succeeded;
+            try {
+                succeeded = execute(operation, enrollment, random);
+            } catch (RuntimeException e) {
+                succeeded = false;
+            }
+            if (succeeded) {
+                report.recordSuccess(operation, System.nanoTime() - start);
+            } else {
+                report.recordError(operation);
+            }
+        }
+    }
+
+    private boolean execute(final Operation operation, final int enrollment, final ThreadLocalRandom random) {
+        return switch (operation) {
+            case CREATE -> createStudent();
+            case ENROLL -> enroll(enrollment);
+            case GRADE -> Grade.gradeStudent(randomStudent(random), randomCourse(random), 2.0f + random.nextInt(4));
+            case REPORT -> random.nextBoolean()
+                    ? randomStudent(random).createReport() != null
+                    : randomCourse(random).studentList() != null;
+        };
+    }
+
+    private boolean createStudent() {
+        int indexNumber = nextIndexNumber.incrementAndGet();
+        Optional<Student> student = Student.create("Load", "Student " + indexNumber, indexNumber);
+        student.ifPresent(students::add);
+        return student.isPresent();
+    }
+
+    // every student is enrolled at most once so unique constraint violations are not reported as errors;
+    // a slot is claimed only while it is below the number of students, so no index is ever handed out twice;
+    // -1 when every student is enrolled already
+    private int claimEnrollment() {
+        int enrollment;
+        do {
+            enrollment = nextEnrollment.get();
+            if (enrollment >= students.size()) {
+                return -1;
+            }
+        } while (!nextEnrollment.compareAndSet(enrollment, enrollment + 1));
+        return enrollment;
+    }
+
+    private boolean enroll(final int enrollment) {
+        return courses.get(enrollment % courses.size()).enrollStudent(students.get(enrollment));
+    }
+
+    private Student randomStudent(final ThreadLocalRandom random) {
+        synchronized (students) {
+            return students.get(random.nextInt(students.size()));
+        }
+    }
+
+    private Course randomCourse(final ThreadLocalRandom random) {
+        return courses.get(random.nextInt(courses.size()));
+    }
+}
@@ -0,0 +1,98 @@
+package pl.edu.agh.iisg.to.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadReport {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    private Duration elapsed = Duration.ZERO;
+
+    private long lockContentions;
+
+    LoadReport() {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    void recordSuccess(final Operation operation, final long latencyNanos) {
+        latencies.get(operation).recordValue(Math.min(latencyNanos, HIGHEST_TRACKABLE_NANOS));
+    }
+
+    void recordError(final Operation operation) {
+        errors.get(operation).increment();
+    }
+
+    void complete(final Duration elapsed, final long lockContentions) {
+        this.elapsed = elapsed;
+        this.lockContentions = lockContentions;
+    }
+
+    public long successCount(final Operation operation) {
+        return latencies.get(operation).getTotalCount();
+    }
+
+    public long errorCount(final Operation operation) {
+        return errors.get(operation).sum();
+    }
+
+    public long totalCount() {
+        long total = 0;
+        for (Operation operation : Operation.values()) {
+            total += successCount(operation) + errorCount(operation);
+        }
+        return total;
+    }
+
+    public double throughput() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds > 0 ? totalCount() / seconds : 0;
+    }
+
+    public double percentileMillis(final Operation operation, final double percentile) {
+        return latencies.get(operation).getValueAtPercentile(percentile) / 1e6;
+    }
+
+    public long lockContentions() {
+        return lockContentions;
+    }
+
+    public Duration elapsed() {
+        return elapsed;
+    }
+
+    public void print(final PrintStream out) {
+        out.printf("elapsed: %d ms, operations: %d, throughput: %.1f ops/s, lock contentions: %d%n",
+                elapsed.toMillis(), totalCount(), throughput(), lockContentions);
+        out.printf("%-8s %9s %7s %9s %9s %9s %9s %9s%n",
+                "op", "ok", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            out.printf("%-8s %9d %7d %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                    operation,
+                    histogram.getTotalCount(),
+                    errorCount(operation),
+                    percentileMillis(operation, 50.0),
+                    percentileMillis(operation, 90.0),
+                    percentileMillis(operation, 99.0),
+                    percentileMillis(operation, 99.9),
+                    histogram.getMaxValue() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package pl.edu.agh.iisg.to.load;
+
+public enum Operation {
+
+    CREATE,
+
+    ENROLL,
+
+    GRADE,
+
+    REPORT
+
+}
@@ -0,0 +1,59 @@
+package pl.edu.agh.iisg.to.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+public class OperationMix {
+
+    private final Operation[] operations;
+
+    private final int[] cumulativeWeights;
+
+    private final int totalWeight;
+
+    public OperationMix(final Map<Operation, Integer> weights) {
+        Map<Operation, Integer> ordered = new EnumMap<>(weights);
+        this.operations = new Operation[ordered.size()];
+        this.cumulativeWeights = new int[ordered.size()];
+
+        int sum = 0;
+        int i = 0;
+        for (Map.Entry<Operation, Integer> entry : ordered.entrySet()) {
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("Weight of " + entry.getKey() + " must not be negative");
+            }
+            sum += entry.getValue();
+            operations[i] = entry.getKey();
+            cumulativeWeights[i] = sum;
+            i++;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("At least one operation must have a positive weight");
+        }
+        this.totalWeight = sum;
+    }
+
+    // parses a mix such as "create=1,enroll=2,grade=4,report=3"
+    public static OperationMix parse(final String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] keyValue = part.split("=");
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Invalid operation weight: " + part);
+            }
+            weights.put(Operation.valueOf(keyValue[0].trim().toUpperCase()), Integer.parseInt(keyValue[1].trim()));
+        }
+        return new OperationMix(weights);
+    }
+
+    public Operation next(final Random random) {
+        int value = random.nextInt(totalWeight);
+        for (int i = 0; i < operations.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+}
@@ -2,17 +2,28 @@ package pl.edu.agh.iisg.to.model;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.logging.Logger;
 
+import pl.edu.agh.iisg.to.connection.ConnectionProvider;
 import pl.edu.agh.iisg.to.executor.QueryExecutor;
 
 public class Course {
 
     public static final String TABLE_NAME = "course";
 
+    // shard which assigns course ids, the other shards hold replicas with the same ids
+    private static final int HOME_SHARD = 0;
+
+    private static final Comparator<Student> STUDENT_LIST_ORDER =
+            Comparator.comparing(Student::lastName).thenComparing(Student::firstName);
+
     private static final Logger logger = Logger.getGlobal();
 
     private final int id;
@@ -28,6 +39,10 @@ public class Course {
         this.name = name;
     }
 
+    /**
+     * Inserts the course on the home shard, which assigns its id, and copies it to the other shards. When a copy
+     * fails, the copies written so far are deleted and the failure is reported; the course is then not created.
+     */
     public static Optional<Course> create(final String name) {
         String insertSql = String.format("INSERT INTO %s (%s) VALUES (?);", TABLE_NAME, Columns.NAME);
         Object[] args = {
@@ -35,7 +50,8 @@ public class Course {
         };
 
         try {
-            int id = QueryExecutor.createAndObtainId(insertSql, args);
+            int id = QueryExecutor.onShard(HOME_SHARD, () -> QueryExecutor.createAndObtainId(insertSql, args));
+            replicate(id, name);
             return Course.findById(id);
         } catch (SQLException e) {
             e.printStackTrace();
@@ -43,13 +59,48 @@ public class Course {
         return Optional.empty();
     }
 
+    private static void replicate(final int id, final String name) throws SQLException {
+        String replicaSql = String.format("INSERT INTO %s (%s, %s) VALUES (?, ?);", TABLE_NAME, Columns.ID, Columns.NAME);
+        List<Integer> written = new ArrayList<>(List.of(HOME_SHARD));
+        try {
+            for (int shard = 0; shard < ConnectionProvider.shardCount(); shard++) {
+                if (shard != HOME_SHARD) {
+                    QueryExecutor.onShard(shard, () -> {
+                        QueryExecutor.create(replicaSql, id, name);
+                        return null;
+                    });
+                    written.add(shard);
+                }
+            }
+        } catch (SQLException e) {
+            // a course missing from a shard could not be enrolled in by that shard's students
+            removeCopies(id, written, e);
+            logger.warning("Course " + name + " could not be copied to every shard and was not created");
+            throw e;
+        }
+    }
+
+    private static void removeCopies(final int id, final List<Integer> shards, final SQLException failure) {
+        String deleteSql = String.format("DELETE FROM %s WHERE %s = ?;", TABLE_NAME, Columns.ID);
+        for (int shard : shards) {
+            try {
+                QueryExecutor.onShard(shard, () -> {
+                    QueryExecutor.delete(deleteSql, id);
+                    return null;
+                });
+            } catch (SQLException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
     public static Optional<Course> findById(final int id) {
         String findByIdSql = "SELECT * FROM course WHERE id = ?";
         Object[] args = {
                 id
         };
 
-        try (ResultSet rs = QueryExecutor.read(findByIdSql, args)) {
+        try (ResultSet rs = QueryExecutor.onShard(HOME_SHARD, () -> QueryExecutor.read(findByIdSql, args))) {
             if (rs.next()) {
                 return Optional.of(new Course(
                         rs.getInt("id"),
@@ -72,7 +123,11 @@ public class Course {
         };
 
         try{
-            QueryExecutor.create(enrollStudentSql, args);
+            int shard = ConnectionProvider.shardForIndexNumber(student.indexNumber());
+            QueryExecutor.onShard(shard, () -> {
+                QueryExecutor.create(enrollStudentSql, args);
+                return null;
+            });
             return true;
         }
         catch (SQLException e){
@@ -92,20 +147,47 @@ public class Course {
                 this.id
         };
 
-        List<Student> resultList = new LinkedList<>();
-        try (ResultSet rs = QueryExecutor.read(findStudentListSql, args)){
-            while (rs.next()) {
-                resultList.add(new Student(
-                        rs.getInt("id"),
-                        rs.getString("first_name"),
-                        rs.getString("last_name"),
-                        rs.getInt("index_number")
-                ));
-            }
+        try {
+            List<List<Student>> shardLists = QueryExecutor.onAllShards(() -> {
+                List<Student> shardList = new LinkedList<>();
+                try (ResultSet rs = QueryExecutor.read(findStudentListSql, args)) {
+                    while (rs.next()) {
+                        shardList.add(new Student(
+                                rs.getInt("id"),
+                                rs.getString("first_name"),
+                                rs.getString("last_name"),
+                                rs.getInt("index_number")
+                        ));
+                    }
+                }
+                return shardList;
+            });
+            return shardLists.size() == 1 ? shardLists.getFirst() : mergeOrdered(shardLists);
         }
         catch (SQLException e){
             e.printStackTrace();
         }
+        return new LinkedList<>();
+    }
+
+    // every shard returns its students already ordered, so a k-way merge keeps the global order
+    private static List<Student> mergeOrdered(final List<List<Student>> shardLists) {
+        PriorityQueue<ShardCursor> cursors = new PriorityQueue<>(
+                Comparator.comparing(ShardCursor::head, STUDENT_LIST_ORDER));
+        for (List<Student> shardList : shardLists) {
+            if (!shardList.isEmpty()) {
+                cursors.add(new ShardCursor(shardList));
+            }
+        }
+
+        List<Student> resultList = new LinkedList<>();
+        while (!cursors.isEmpty()) {
+            ShardCursor cursor = cursors.poll();
+            resultList.add(cursor.head());
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
         return resultList;
     }
 
@@ -150,4 +232,28 @@ public class Course {
         result = 31 * result + name.hashCode();
         return result;
     }
+
+    private static final class ShardCursor {
+
+        private final Iterator<Student> iterator;
+
+        private Student head;
+
+        private ShardCursor(final List<Student> students) {
+            this.iterator = students.iterator();
+            this.head = iterator.next();
+        }
+
+        private Student head() {
+            return head;
+        }
+
+        private boolean advance() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            head = iterator.next();
+            return true;
+        }
+    }
 }
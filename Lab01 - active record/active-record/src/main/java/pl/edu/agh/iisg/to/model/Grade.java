@@ -1,5 +1,6 @@
 package pl.edu.agh.iisg.to.model;
 
+import pl.edu.agh.iisg.to.connection.ConnectionProvider;
 import pl.edu.agh.iisg.to.executor.QueryExecutor;
 
 import java.sql.SQLException;
@@ -28,7 +29,8 @@ public class Grade {
         };
 
         try{
-            QueryExecutor.createAndObtainId(gradeStudentSql, args);
+            int shard = ConnectionProvider.shardForIndexNumber(student.indexNumber());
+            QueryExecutor.onShard(shard, () -> QueryExecutor.createAndObtainId(gradeStudentSql, args));
             return true;
         }
         catch (SQLException e) {
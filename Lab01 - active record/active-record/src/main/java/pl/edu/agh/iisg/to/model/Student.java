@@ -36,7 +36,8 @@ public class Student {
         };
 
         try{
-            int id = QueryExecutor.createAndObtainId(sql, args);
+            int shard = ConnectionProvider.shardForIndexNumber(indexNumber);
+            int id = QueryExecutor.onShard(shard, () -> QueryExecutor.createAndObtainId(sql, args));
             return Student.findById(id);
         } catch (SQLException e) {
             e.printStackTrace();
@@ -48,7 +49,8 @@ public class Student {
         String sql = "SELECT * FROM student WHERE index_number = ?";
         Object[] args = {indexNumber};
 
-        try (ResultSet rs = QueryExecutor.read(sql, args)){
+        int shard = ConnectionProvider.shardForIndexNumber(indexNumber);
+        try (ResultSet rs = QueryExecutor.onShard(shard, () -> QueryExecutor.read(sql, args))){
             if (rs.next()){
                 Student student = new Student(
                         rs.getInt("id"),
@@ -69,12 +71,12 @@ public class Student {
 
     public static Optional<Student> findById(final int id) {
         String sql = "SELECT * FROM student WHERE id = (?)";
-        return find(id, sql);
+        return find(ConnectionProvider.shardForStudentId(id), id, sql);
     }
 
-    private static Optional<Student> find(int value, String sql) {
+    private static Optional<Student> find(int shard, int value, String sql) {
         Object[] args = {value};
-        try (ResultSet rs = QueryExecutor.read(sql, args)) {
+        try (ResultSet rs = QueryExecutor.onShard(shard, () -> QueryExecutor.read(sql, args))) {
             if (rs.next()) {
                 return Optional.of(new Student(
                         rs.getInt("id"),
@@ -104,7 +106,9 @@ public class Student {
 
         Map<Course, Float> result = new java.util.LinkedHashMap<>();
 
-        try (ResultSet rs = QueryExecutor.read(sql, args)) {
+        // courses are replicated to every shard, so the report is built on the student's shard alone
+        int shard = ConnectionProvider.shardForIndexNumber(indexNumber);
+        try (ResultSet rs = QueryExecutor.onShard(shard, () -> QueryExecutor.read(sql, args))) {
             while (rs.next()) {
                 Course course = new Course(
                         rs.getInt("id"),
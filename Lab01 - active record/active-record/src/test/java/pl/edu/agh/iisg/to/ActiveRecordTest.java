@@ -5,13 +5,23 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import pl.edu.agh.iisg.to.connection.ConnectionProfile;
 import pl.edu.agh.iisg.to.connection.ConnectionProvider;
 import pl.edu.agh.iisg.to.executor.QueryExecutor;
+import pl.edu.agh.iisg.to.load.LoadGenerator;
+import pl.edu.agh.iisg.to.load.Operation;
+import pl.edu.agh.iisg.to.load.OperationMix;
 import pl.edu.agh.iisg.to.model.Course;
 import pl.edu.agh.iisg.to.model.Grade;
 import pl.edu.agh.iisg.to.model.Student;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -20,13 +30,16 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ActiveRecordTest {
 
+    private static final String JDBC_ADDRESS = "jdbc:sqlite:active_record_test.db";
+
     @BeforeAll
     public static void init() {
-        ConnectionProvider.init("jdbc:sqlite:active_record_test.db");
+        ConnectionProvider.init(JDBC_ADDRESS);
     }
 
     @BeforeEach
@@ -220,6 +233,202 @@ public class ActiveRecordTest {
         assertEquals(Float.compare(4.0f, report.get(course2)), 0);
     }
 
+    @Test
+    public void connectionProfileCanBeSwitchedAroundBulkOperation() throws SQLException {
+        // Given
+        var initialProfile = ConnectionProvider.getProfile();
+
+        // When
+        try (var bulkLoad = ConnectionProvider.switchProfile(ConnectionProfile.BULK_LOAD)) {
+            assertEquals(initialProfile, bulkLoad.previous());
+            assertEquals(ConnectionProfile.BULK_LOAD, ConnectionProvider.getProfile());
+            assertEquals(0, readPragma("synchronous"));
+            for (int i = 0; i < 100; i++) {
+                Student.create("Adam", "Kowalski", 1100000 + i);
+            }
+        }
+
+        // Then
+        assertEquals(initialProfile, ConnectionProvider.getProfile());
+        assertEquals(2, readPragma("synchronous"));
+        checkStudent(Student.findByIndexNumber(1100099));
+    }
+
+    @Test
+    public void connectionProfileIsRefusedWhenSQLiteKeepsAnotherJournalMode() throws SQLException {
+        // Given
+        try (var inMemory = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+
+            // When & Then
+            assertThrows(SQLException.class, () -> ConnectionProfile.BALANCED.apply(inMemory));
+            try (var statement = inMemory.createStatement(); var rs = statement.executeQuery("PRAGMA busy_timeout")) {
+                assertTrue(rs.next());
+                assertNotEquals(ConnectionProfile.BALANCED.busyTimeoutMillis(), rs.getInt(1));
+            }
+            ConnectionProfile.BULK_LOAD.apply(inMemory);
+        }
+    }
+
+    @Test
+    public void initFailsWhenAShardRefusesTheProfile() {
+        try {
+            // When & Then
+            assertThrows(RuntimeException.class, () -> ConnectionProvider.initSharded(
+                    List.of(JDBC_ADDRESS, "jdbc:sqlite::memory:"), ConnectionProfile.BALANCED));
+            assertThrows(RuntimeException.class, ConnectionProvider::getConnection);
+        } finally {
+            ConnectionProvider.init(JDBC_ADDRESS);
+        }
+    }
+
+    @Test
+    public void modelOperationsSucceedUnderConcurrentLoad() throws InterruptedException {
+        // Given
+        var mix = OperationMix.parse("create=1,enroll=2,grade=4,report=3");
+        var generator = new LoadGenerator(4, Duration.ofSeconds(1), true, mix);
+
+        // When
+        var report = generator.run();
+
+        // Then
+        assertTrue(report.totalCount() > 0);
+        for (Operation operation : Operation.values()) {
+            assertEquals(0, report.errorCount(operation));
+        }
+    }
+
+    @Test
+    public void failedUpdateIsRolledBackAndRestoresAutoCommit() throws SQLException {
+        // When
+        assertThrows(SQLException.class, () -> QueryExecutor.executeUpdate(
+                List.of("INSERT INTO course (name) VALUES (?)", "INSERT INTO missing_table VALUES (?)"),
+                List.of(List.of("Rolled back"), List.of(1))));
+
+        // Then
+        assertTrue(ConnectionProvider.getConnection().getAutoCommit());
+        try (ResultSet rs = QueryExecutor.read("SELECT COUNT(*) FROM course WHERE name = ?", "Rolled back")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void studentsArePartitionedAcrossShards() throws Exception {
+        // Given
+        List<Path> shardFiles = new ArrayList<>();
+        List<String> shardAddresses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Path shardFile = Files.createTempFile("active_record_shard_", ".db");
+            shardFiles.add(shardFile);
+            shardAddresses.add("jdbc:sqlite:" + shardFile);
+        }
+
+        try {
+            ConnectionProvider.initSharded(shardAddresses);
+            QueryExecutor.createTables();
+            var course = Course.create("Sharded").orElseThrow();
+
+            // When
+            List<Student> students = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                var student = Student.create("Jan", "Nowak" + (char) ('A' + (i * 5) % 12), 1200000 + i).orElseThrow();
+                course.enrollStudent(student);
+                Grade.gradeStudent(student, course, 4.0f);
+                students.add(student);
+            }
+
+            // Then
+            var studentList = course.studentList();
+            assertEquals(12, studentList.size());
+            for (int i = 1; i < studentList.size(); i++) {
+                assertTrue(studentList.get(i - 1).lastName().compareTo(studentList.get(i).lastName()) <= 0);
+            }
+            for (Student student : students) {
+                assertEquals(student, Student.findByIndexNumber(student.indexNumber()).orElseThrow());
+                assertEquals(student, Student.findById(student.id()).orElseThrow());
+                assertEquals(ConnectionProvider.shardForIndexNumber(student.indexNumber()),
+                        ConnectionProvider.shardForStudentId(student.id()));
+                assertEquals(Float.compare(4.0f, student.createReport().get(course)), 0);
+            }
+            assertEquals(3, students.stream().map(Student::id).map(ConnectionProvider::shardForStudentId).distinct().count());
+        } finally {
+            ConnectionProvider.init(JDBC_ADDRESS);
+            for (Path shardFile : shardFiles) {
+                Files.deleteIfExists(shardFile);
+            }
+        }
+    }
+
+    @Test
+    public void failedCourseCopyRemovesTheWrittenCopies() throws Exception {
+        // Given
+        List<Path> shardFiles = new ArrayList<>();
+        List<String> shardAddresses = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Path shardFile = Files.createTempFile("active_record_shard_", ".db");
+            shardFiles.add(shardFile);
+            shardAddresses.add("jdbc:sqlite:" + shardFile);
+        }
+
+        try {
+            ConnectionProvider.initSharded(shardAddresses);
+            QueryExecutor.createTables();
+            QueryExecutor.onShard(1, () -> {
+                QueryExecutor.create("INSERT INTO course (id, name) VALUES (?, ?)", 1000, "Duplicated");
+                return null;
+            });
+
+            // When
+            var course = Course.create("Duplicated");
+
+            // Then
+            assertTrue(course.isEmpty());
+            try (ResultSet rs = QueryExecutor.onShard(0, () -> QueryExecutor.read("SELECT COUNT(*) FROM course"))) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+        } finally {
+            ConnectionProvider.init(JDBC_ADDRESS);
+            for (Path shardFile : shardFiles) {
+                Files.deleteIfExists(shardFile);
+            }
+        }
+    }
+
+    @Test
+    public void shardFilesAreRefusedWithAnotherShardCount() throws Exception {
+        // Given
+        List<Path> shardFiles = new ArrayList<>();
+        List<String> shardAddresses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Path shardFile = Files.createTempFile("active_record_shard_", ".db");
+            shardFiles.add(shardFile);
+            shardAddresses.add("jdbc:sqlite:" + shardFile);
+        }
+
+        try {
+            ConnectionProvider.initSharded(shardAddresses.subList(0, 2));
+            QueryExecutor.createTables();
+
+            // When
+            ConnectionProvider.initSharded(shardAddresses);
+
+            // Then
+            assertThrows(SQLException.class, QueryExecutor::createTables);
+        } finally {
+            ConnectionProvider.init(JDBC_ADDRESS);
+            for (Path shardFile : shardFiles) {
+                Files.deleteIfExists(shardFile);
+            }
+        }
+    }
+
+    private int readPragma(final String pragma) throws SQLException {
+        try (ResultSet rs = QueryExecutor.read("PRAGMA " + pragma)) {
+            return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+
     private void checkStudent(final Student student) {
         checkStudent(Optional.ofNullable(student));
     }
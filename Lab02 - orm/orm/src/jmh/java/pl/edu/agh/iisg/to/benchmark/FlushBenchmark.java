@@ -0,0 +1,67 @@
+package pl.edu.agh.iisg.to.benchmark;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.agh.iisg.to.model.Grade;
+import pl.edu.agh.iisg.to.model.Student;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a flush with all students of an {@link OrmDataset} and their grades managed by the session.
+ * Enhanced entities track their own changes, so a flush skips the clean ones instead of comparing every
+ * attribute with its snapshot. Compare the builds with and without enhancement, with the gc profiler for
+ * the memory allocated per flush:
+ * {@code gradle jmh --args="-prof gc -p sessionStrategy=BOUND -p jdbcBatchSize=50 FlushBenchmark"}
+ * and the same with {@code -PenhanceEntities=false}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlushBenchmark {
+
+    // a session of its own holding the loaded entities for the whole iteration, never committed
+    @State(Scope.Thread)
+    public static class ManagedEntities {
+
+        private Session session;
+
+        private int managed;
+
+        @Setup(Level.Iteration)
+        public void load(final OrmDataset dataset) {
+            session = dataset.sessionService().getSessionFactory().openSession();
+            session.beginTransaction();
+            List<Student> students = session.createSelectionQuery("FROM Student", Student.class).getResultList();
+            List<Grade> grades = session.createSelectionQuery("FROM Grade g JOIN FETCH g.course", Grade.class)
+                    .getResultList();
+            managed = students.size() + grades.size();
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            session.getTransaction().rollback();
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public int flushManagedEntities(final ManagedEntities entities) {
+        entities.session.flush();
+        return entities.managed;
+    }
+}
@@ -0,0 +1,118 @@
+package pl.edu.agh.iisg.to.benchmark;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import pl.edu.agh.iisg.to.dao.GenericDao;
+import pl.edu.agh.iisg.to.dao.StudentDao;
+import pl.edu.agh.iisg.to.model.Student;
+import pl.edu.agh.iisg.to.model.id.BlockIdGenerator;
+import pl.edu.agh.iisg.to.session.SessionService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures student insert throughput for several id block sizes, each against a fresh database file.
+ * The first row is the baseline: {@link IdentityStudent} takes its id from the database, which needs no
+ * reservation but sends every insert on its own, since the id is only known once the row is written. The TABLE
+ * strategy Student used before cannot be the baseline: it fails saveAll with SQLITE_BUSY, see
+ * {@link BlockIdGenerator}. A block size of 1 reserves an id on every insert.
+ * Usage: {@code gradle idBenchmark --args="<inserts>"}.
+ */
+public final class IdAllocationBenchmark {
+
+    private static final int DEFAULT_INSERTS = 2_000;
+
+    private static final int[] BLOCK_SIZES = {1, 10, 50, 500};
+
+    private IdAllocationBenchmark() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int inserts = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_INSERTS;
+
+        System.out.printf("%-10s %22s %16s%n", "ids", "tx per insert [ops/s]", "saveAll [ops/s]");
+        print("IDENTITY", run(0, inserts));
+        for (int blockSize : BLOCK_SIZES) {
+            print("block " + blockSize, run(blockSize, inserts));
+        }
+    }
+
+    private static void print(final String ids, final long[] result) {
+        System.out.printf("%-10s %22d %16d%n", ids, result[0], result[1]);
+    }
+
+    // a block size of 0 runs the IDENTITY baseline
+    private static long[] run(final int blockSize, final int inserts) throws IOException {
+        Path dbFile = Files.createTempFile("id-benchmark-", ".db");
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .configure()
+                .applySetting(AvailableSettings.JAKARTA_JDBC_URL, "jdbc:sqlite:" + dbFile)
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create")
+                .applySetting(AvailableSettings.SHOW_SQL, false)
+                .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, false)
+                .applySetting(AvailableSettings.GENERATE_STATISTICS, false)
+                .applySetting(BlockIdGenerator.BLOCK_SIZE_PREFIX + Student.TABLE_NAME, Math.max(blockSize, 1))
+                .build();
+        try (SessionFactory factory = new MetadataSources(registry)
+                .addAnnotatedClass(IdentityStudent.class)
+                .buildMetadata()
+                .buildSessionFactory()) {
+            SessionService sessionService = new SessionService(factory);
+            return blockSize == 0
+                    ? measure(new IdentityStudentDao(sessionService), IdentityStudent::new, inserts)
+                    : measure(new StudentDao(sessionService), Student::new, inserts);
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+            for (String suffix : new String[]{"", "-wal", "-shm", "-journal"}) {
+                Files.deleteIfExists(Path.of(dbFile + suffix));
+            }
+        }
+    }
+
+    private static <T> long[] measure(final GenericDao<T> dao, final StudentFactory<T> factory, final int inserts) {
+        // session and transaction per insert
+        long start = System.nanoTime();
+        for (int i = 0; i < inserts; i++) {
+            dao.save(factory.create("First" + i, "Last" + i, 100_000 + i));
+        }
+        long single = System.nanoTime() - start;
+
+        List<T> students = new ArrayList<>(inserts);
+        for (int i = 0; i < inserts; i++) {
+            students.add(factory.create("First" + i, "Last" + i, 1_000_000 + i));
+        }
+        start = System.nanoTime();
+        if (dao.saveAll(students).isEmpty()) {
+            throw new IllegalStateException("saveAll was rolled back");
+        }
+        long batched = System.nanoTime() - start;
+
+        return new long[]{throughput(inserts, single), throughput(inserts, batched)};
+    }
+
+    private static long throughput(final int operations, final long nanos) {
+        return operations * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+    }
+
+    @FunctionalInterface
+    private interface StudentFactory<T> {
+
+        T create(String firstName, String lastName, int indexNumber);
+    }
+
+    private static final class IdentityStudentDao extends GenericDao<IdentityStudent> {
+
+        private IdentityStudentDao(final SessionService sessionService) {
+            super(sessionService, IdentityStudent.class);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package pl.edu.agh.iisg.to.benchmark;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import pl.edu.agh.iisg.to.model.Student;
+
+// the columns of a student with ids assigned by the database on insert, the baseline of IdAllocationBenchmark
+@Entity
+@Table(name = IdentityStudent.TABLE_NAME)
+public class IdentityStudent {
+
+    public static final String TABLE_NAME = "identity_student";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = Student.Columns.ID)
+    private int id;
+
+    @Column(name = Student.Columns.FIRST_NAME, nullable = false, length = 50)
+    private String firstName;
+
+    @Column(name = Student.Columns.LAST_NAME, nullable = false, length = 50)
+    private String lastName;
+
+    @Column(name = Student.Columns.INDEX_NUMBER, nullable = false, unique = true)
+    private int indexNumber;
+
+    IdentityStudent() {
+    }
+
+    public IdentityStudent(final String firstName, final String lastName, final int indexNumber) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.indexNumber = indexNumber;
+    }
+
+    public int id() {
+        return id;
+    }
+}
@@ -0,0 +1,103 @@
+package pl.edu.agh.iisg.to.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.Student;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the DAO and SchoolService operations against a seeded {@link OrmDataset}.
+ * Usage: {@code gradle jmh}, or e.g. {@code gradle jmh --args="-p students=50000 -p sessionStrategy=BOUND"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrmBenchmark {
+
+    // binds a session to the benchmark thread for the iteration when the strategy asks for it
+    @State(Scope.Thread)
+    public static class SessionScope {
+
+        private OrmDataset dataset;
+
+        @Setup(Level.Iteration)
+        public void open(final OrmDataset dataset) {
+            this.dataset = dataset;
+            if (dataset.sessionStrategy == OrmDataset.SessionStrategy.BOUND) {
+                dataset.sessionService().openSession();
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            dataset.sessionService().closeSession();
+        }
+    }
+
+    // a fresh enrolled student for every removal, created outside the measured call in the iteration's session
+    @State(Scope.Thread)
+    public static class RemovalTarget {
+
+        private Student student;
+
+        @Setup(Level.Invocation)
+        public void create(final OrmDataset dataset) {
+            student = dataset.studentDao().create("Jan", "Nowak", dataset.nextIndexNumber()).orElseThrow();
+            dataset.schoolService().enrollStudent(dataset.randomCourse(), student);
+        }
+    }
+
+    @Benchmark
+    public Optional<Student> createStudent(final OrmDataset dataset, final SessionScope session) {
+        return dataset.studentDao().create("Jan", "Nowak", dataset.nextIndexNumber());
+    }
+
+    @Benchmark
+    public Optional<Student> findStudentByIndexNumber(final OrmDataset dataset, final SessionScope session) {
+        return dataset.studentDao().findByIndexNumber(dataset.randomStudent().indexNumber());
+    }
+
+    @Benchmark
+    public Optional<Course> findCourseByName(final OrmDataset dataset, final SessionScope session) {
+        return dataset.courseDao().findByName(dataset.randomCourse().name());
+    }
+
+    // mostly new enrollments at first, more and more of them already present as the iterations go on
+    @Benchmark
+    public boolean enrollStudent(final OrmDataset dataset, final SessionScope session) {
+        return dataset.schoolService().enrollStudent(dataset.randomCourse(), dataset.randomStudent());
+    }
+
+    @Benchmark
+    public boolean gradeStudent(final OrmDataset dataset, final SessionScope session) {
+        return dataset.schoolService().gradeStudent(dataset.randomStudent(), dataset.randomCourse(), 4.5f);
+    }
+
+    @Benchmark
+    public Map<String, List<Float>> getStudentGrades(final OrmDataset dataset, final SessionScope session) {
+        return dataset.schoolService().getStudentGrades(dataset.randomCourse().name());
+    }
+
+    @Benchmark
+    public Student removeStudent(final OrmDataset dataset, final SessionScope session, final RemovalTarget target) {
+        dataset.studentRepository().remove(target.student);
+        return target.student;
+    }
+}
@@ -0,0 +1,179 @@
+package pl.edu.agh.iisg.to.benchmark;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import pl.edu.agh.iisg.to.dao.CourseDao;
+import pl.edu.agh.iisg.to.dao.GradeDao;
+import pl.edu.agh.iisg.to.dao.StudentDao;
+import pl.edu.agh.iisg.to.ingest.BulkIngestService;
+import pl.edu.agh.iisg.to.ingest.IngestRecord;
+import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.Student;
+import pl.edu.agh.iisg.to.repository.StudentRepository;
+import pl.edu.agh.iisg.to.service.SchoolService;
+import pl.edu.agh.iisg.to.session.SessionService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A database file seeded once per trial with the given number of students. There is a course per 100 students,
+ * every student is enrolled in three courses and has a grade in each of them.
+ */
+@State(Scope.Benchmark)
+public class OrmDataset {
+
+    public enum SessionStrategy {
+        // one session bound to the benchmark thread for a whole iteration, as in the tests
+        BOUND,
+        // no bound session, every DAO call opens and closes its own
+        PER_OPERATION
+    }
+
+    private static final int STUDENTS_PER_COURSE = 100;
+
+    private static final int COURSES_PER_STUDENT = 3;
+
+    private static final int FIRST_INDEX_NUMBER = 100_000;
+
+    @Param({"1000", "10000"})
+    public int students;
+
+    @Param({"BOUND", "PER_OPERATION"})
+    public SessionStrategy sessionStrategy;
+
+    @Param({"1", "50"})
+    public int jdbcBatchSize;
+
+    private Path dbFile;
+
+    private StandardServiceRegistry registry;
+
+    private SessionFactory sessionFactory;
+
+    private SessionService sessionService;
+
+    private StudentDao studentDao;
+
+    private CourseDao courseDao;
+
+    private StudentRepository studentRepository;
+
+    private SchoolService schoolService;
+
+    private List<Student> seededStudents;
+
+    private List<Course> seededCourses;
+
+    private AtomicInteger nextIndexNumber;
+
+    @Setup(Level.Trial)
+    public void seed() throws IOException {
+        dbFile = Files.createTempFile("orm-benchmark-", ".db");
+        registry = new StandardServiceRegistryBuilder()
+                .configure()
+                .applySetting(AvailableSettings.JAKARTA_JDBC_URL, "jdbc:sqlite:" + dbFile)
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create")
+                .applySetting(AvailableSettings.SHOW_SQL, false)
+                .applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, jdbcBatchSize)
+                .build();
+        sessionFactory = new MetadataSources(registry).buildMetadata().buildSessionFactory();
+        sessionService = new SessionService(sessionFactory);
+        studentDao = new StudentDao(sessionService);
+        courseDao = new CourseDao(sessionService);
+        GradeDao gradeDao = new GradeDao(sessionService);
+        studentRepository = new StudentRepository(studentDao, gradeDao, courseDao, sessionService);
+        schoolService = new SchoolService(sessionService, studentDao, courseDao, gradeDao, studentRepository);
+
+        new BulkIngestService(sessionFactory).ingest(records());
+        seededStudents = studentDao.findAll();
+        seededCourses = sessionService.doAsReadOnlyTransaction(() -> sessionService.getSession()
+                .createSelectionQuery("FROM Course", Course.class)
+                .getResultList()).orElseThrow();
+        nextIndexNumber = new AtomicInteger(FIRST_INDEX_NUMBER + students);
+    }
+
+    private Stream<IngestRecord> records() {
+        int courses = courseCount();
+        Stream<IngestRecord> courseRecords = IntStream.range(0, courses)
+                .mapToObj(i -> IngestRecord.course(courseName(i)));
+        Stream<IngestRecord> studentRecords = IntStream.range(0, students).boxed().flatMap(i -> {
+            int indexNumber = FIRST_INDEX_NUMBER + i;
+            Stream.Builder<IngestRecord> records = Stream.builder();
+            records.add(IngestRecord.student("First" + i, "Last" + i, indexNumber));
+            for (int j = 0; j < Math.min(COURSES_PER_STUDENT, courses); j++) {
+                String courseName = courseName((i + j) % courses);
+                records.add(IngestRecord.enrollment(indexNumber, courseName));
+                records.add(IngestRecord.grade(indexNumber, courseName, 2.0f + (i + j) % 7 * 0.5f));
+            }
+            return records.build();
+        });
+        return Stream.concat(courseRecords, studentRecords);
+    }
+
+    private int courseCount() {
+        return Math.max(1, students / STUDENTS_PER_COURSE);
+    }
+
+    private static String courseName(final int i) {
+        return "Course" + i;
+    }
+
+    @TearDown(Level.Trial)
+    public void drop() throws IOException {
+        sessionFactory.close();
+        StandardServiceRegistryBuilder.destroy(registry);
+        for (String suffix : new String[]{"", "-wal", "-shm", "-journal"}) {
+            Files.deleteIfExists(Path.of(dbFile + suffix));
+        }
+    }
+
+    public SessionService sessionService() {
+        return sessionService;
+    }
+
+    public StudentDao studentDao() {
+        return studentDao;
+    }
+
+    public CourseDao courseDao() {
+        return courseDao;
+    }
+
+    public StudentRepository studentRepository() {
+        return studentRepository;
+    }
+
+    public SchoolService schoolService() {
+        return schoolService;
+    }
+
+    // detached students and courses from the seed
+    public Student randomStudent() {
+        return seededStudents.get(ThreadLocalRandom.current().nextInt(seededStudents.size()));
+    }
+
+    public Course randomCourse() {
+        return seededCourses.get(ThreadLocalRandom.current().nextInt(seededCourses.size()));
+    }
+
+    // an index number not used by any student yet
+    public int nextIndexNumber() {
+        return nextIndexNumber.getAndIncrement();
+    }
+}
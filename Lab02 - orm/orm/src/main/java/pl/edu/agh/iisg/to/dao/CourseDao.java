@@ -1,14 +1,41 @@
 package pl.edu.agh.iisg.to.dao;
 
-import jakarta.persistence.PersistenceException;
+import org.hibernate.Cache;
 import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.graph.RootGraph;
 import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.Grade;
+import pl.edu.agh.iisg.to.model.Student;
 import pl.edu.agh.iisg.to.session.SessionService;
+import pl.edu.agh.iisg.to.stats.CourseStatsChanges;
 
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class CourseDao extends GenericDao<Course> {
 
+    private static final String ENROLLMENT_EXISTS = "SELECT EXISTS (SELECT 1 FROM " + Course.ENROLLMENT_TABLE_NAME
+            + " WHERE " + Course.EnrollmentColumns.COURSE_ID + " = :courseId AND "
+            + Course.EnrollmentColumns.STUDENT_ID + " = :studentId)";
+
+    private static final String INSERT_ENROLLMENT = "INSERT OR IGNORE INTO " + Course.ENROLLMENT_TABLE_NAME + " ("
+            + Course.EnrollmentColumns.COURSE_ID + ", " + Course.EnrollmentColumns.STUDENT_ID
+            + ") VALUES (?, ?)";
+
+    private static final String COUNT_ENROLLMENTS = "SELECT COUNT(*) FROM " + Course.ENROLLMENT_TABLE_NAME
+            + " WHERE " + Course.EnrollmentColumns.COURSE_ID + " = :courseId";
+
+    private static final String TOP_STUDENTS = ranking("", "WHERE r.position <= :limit");
+
+    private static final String TOP_STUDENTS_IN_COURSE = ranking("WHERE g.course_id = :courseId", "WHERE r.position <= :limit");
+
+    private static final String STUDENT_RANK = ranking("WHERE g.course_id = :courseId", "WHERE r.student_id = :studentId");
+
     public CourseDao(SessionService sessionService) {
         super(sessionService, Course.class);
     }
@@ -18,14 +45,118 @@ public class CourseDao extends GenericDao<Course> {
     }
 
     public Optional<Course> findByName(final String name) {
-        try {
+        return doAsTransaction(() -> currentSession()
+                .bySimpleNaturalId(Course.class)
+                .load(name));
+    }
+
+    public Optional<Course> findByName(final String name, final String fetchGraph) {
+        RootGraph<Course> graph = entityGraph(fetchGraph);
+        return doAsTransaction(() -> currentSession()
+                .bySimpleNaturalId(Course.class)
+                .withFetchGraph(graph)
+                .load(name));
+    }
+
+    // the enrollment queries below use the join table's primary key and never initialize course.studentSet
+
+    public boolean isEnrolled(final Course course, final Student student) {
+        return doAsTransaction(() -> currentSession()
+                .createNativeQuery(ENROLLMENT_EXISTS, Integer.class)
+                .setParameter("courseId", course.id())
+                .setParameter("studentId", student.id())
+                .getSingleResult() == 1).orElse(false);
+    }
+
+    /**
+     * Inserts the join table row unless it already exists and returns whether it was inserted. The statement runs
+     * on the session's connection, so that only the two cached collections it changes are evicted rather than
+     * whole cache regions. Collections already initialized in the session are not updated.
+     */
+    public boolean enroll(final Course course, final Student student) {
+        return doAsTransaction(() -> {
             Session session = currentSession();
-            return session.createQuery("SELECT c FROM Course c WHERE c.name = :name", Course.class)
-                    .setParameter("name", name)
-                    .uniqueResultOptional();
-        } catch (PersistenceException e) {
-            e.printStackTrace();
-        }
-        return Optional.empty();
+            int inserted = session.doReturningWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_ENROLLMENT)) {
+                    statement.setInt(1, course.id());
+                    statement.setInt(2, student.id());
+                    return statement.executeUpdate();
+                }
+            });
+            if (inserted == 0) {
+                return false;
+            }
+            CourseStatsChanges.of(session.unwrap(SharedSessionContractImplementor.class)).enrolled(course.id(), 1);
+            Cache cache = session.getSessionFactory().getCache();
+            cache.evictCollectionData(Course.class.getName() + ".studentSet", course.id());
+            cache.evictCollectionData(Student.class.getName() + ".courseSet", student.id());
+            return true;
+        }).orElse(false);
+    }
+
+    public long countEnrollments(final Course course) {
+        return doAsReadOnlyTransaction(() -> currentSession()
+                .createNativeQuery(COUNT_ENROLLMENTS, Long.class)
+                .setParameter("courseId", course.id())
+                .getSingleResult()).orElse(0L);
+    }
+
+    // average grade of every graded student in each course, ranked within the course by the database
+    private static String ranking(final String gradeFilter, final String rankFilter) {
+        return "WITH ranked AS (SELECT g.course_id, g.student_id, AVG(g.grade) AS average_grade, COUNT(*) AS grade_count, "
+                + "RANK() OVER (PARTITION BY g.course_id ORDER BY AVG(g.grade) DESC) AS position "
+                + "FROM " + Grade.TABLE_NAME + " g " + gradeFilter + " GROUP BY g.course_id, g.student_id) "
+                + "SELECT r.course_id, c.name, r.student_id, s.index_number, s.first_name, s.last_name, "
+                + "r.average_grade, r.grade_count, r.position FROM ranked r "
+                + "JOIN " + Course.TABLE_NAME + " c ON c.id = r.course_id "
+                + "JOIN " + Student.TABLE_NAME + " s ON s.id = r.student_id "
+                + rankFilter + " ORDER BY c.name, r.position, s.last_name, s.first_name";
+    }
+
+    /**
+     * The best students by average grade in every course, keyed by course name, from a single query. A course
+     * lists the students of its first limit ranks, so ties may make it more than limit students.
+     */
+    public Map<String, List<StudentRank>> findTopStudents(final int limit) {
+        return doAsReadOnlyTransaction(() -> {
+            Map<String, List<StudentRank>> rankings = new LinkedHashMap<>();
+            currentSession().createNativeQuery(TOP_STUDENTS, Object[].class)
+                    .setParameter("limit", limit)
+                    .getResultStream()
+                    .map(StudentRank::new)
+                    .forEach(rank -> rankings.computeIfAbsent(rank.courseName(), name -> new ArrayList<>()).add(rank));
+            return rankings;
+        }).orElseGet(Map::of);
+    }
+
+    public List<StudentRank> findTopStudents(final Course course, final int limit) {
+        return doAsReadOnlyTransaction(() -> currentSession()
+                .createNativeQuery(TOP_STUDENTS_IN_COURSE, Object[].class)
+                .setParameter("courseId", course.id())
+                .setParameter("limit", limit)
+                .getResultStream()
+                .map(StudentRank::new)
+                .toList()).orElseGet(List::of);
+    }
+
+    // empty when the student has no grade in the course
+    public Optional<StudentRank> findRank(final Course course, final Student student) {
+        return doAsReadOnlyTransaction(() -> currentSession()
+                .createNativeQuery(STUDENT_RANK, Object[].class)
+                .setParameter("courseId", course.id())
+                .setParameter("studentId", student.id())
+                .uniqueResult()).map(StudentRank::new);
+    }
+
+    // number of enrolled students per course name, courses without students included
+    public Map<String, Long> countEnrollmentsByCourse() {
+        return doAsReadOnlyTransaction(() -> {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            currentSession()
+                    .createSelectionQuery("SELECT c.name, size(c.studentSet) FROM Course c ORDER BY c.name", Object[].class)
+                    .getResultStream()
+                    .forEach(row -> counts.put((String) row[0], ((Number) row[1]).longValue()));
+            return counts;
+        }).orElseGet(Map::of);
     }
 }
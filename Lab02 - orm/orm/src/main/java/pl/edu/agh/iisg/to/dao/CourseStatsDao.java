@@ -0,0 +1,54 @@
+package pl.edu.agh.iisg.to.dao;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.CourseStats;
+import pl.edu.agh.iisg.to.session.SessionService;
+import pl.edu.agh.iisg.to.stats.CourseStatsChanges;
+
+import java.util.List;
+import java.util.Optional;
+
+public class CourseStatsDao extends GenericDao<CourseStats> {
+
+    public CourseStatsDao(SessionService sessionService) {
+        super(sessionService, CourseStats.class);
+    }
+
+    // the course overview, read from the statistics table alone
+    public List<CourseStats> findAll() {
+        return doAsReadOnlyTransaction(() -> {
+            Session session = currentSession();
+            List<CourseStats> stats = session
+                    .createSelectionQuery("FROM CourseStats ORDER BY courseName", CourseStats.class)
+                    .getResultList();
+            // the rows change past the persistence context, so managed instances would be stale on the next read
+            stats.forEach(session::detach);
+            return stats;
+        }).orElseGet(List::of);
+    }
+
+    public Optional<CourseStats> findByCourse(final Course course) {
+        return doAsReadOnlyTransaction(() -> {
+            Session session = currentSession();
+            CourseStats stats = session.get(CourseStats.class, course.id());
+            if (stats != null) {
+                session.detach(stats);
+            }
+            return stats;
+        });
+    }
+
+    /**
+     * Recounts the statistics of every course, e.g. after data was written past Hibernate, and returns
+     * the number of courses whose statistics were missing or wrong.
+     */
+    public int reconcile() {
+        return doAsTransaction(() -> {
+            Session session = currentSession();
+            session.flush();
+            return CourseStatsChanges.of(session.unwrap(SharedSessionContractImplementor.class)).reconcile();
+        }).orElse(0);
+    }
+}
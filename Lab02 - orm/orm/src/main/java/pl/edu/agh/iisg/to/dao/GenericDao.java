@@ -3,12 +3,21 @@ package pl.edu.agh.iisg.to.dao;
 
 import jakarta.persistence.PersistenceException;
 import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.graph.RootGraph;
+import org.hibernate.stat.Statistics;
 import pl.edu.agh.iisg.to.session.SessionService;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public abstract class GenericDao<T> {
 
+    // used when hibernate.jdbc.batch_size is not configured
+    private static final int DEFAULT_FLUSH_INTERVAL = 50;
+
     private final SessionService sessionService;
 
     private final Class<T> entityClass;
@@ -22,23 +31,116 @@ public abstract class GenericDao<T> {
         return sessionService.doAsTransaction(() -> currentSession().get(entityClass, id));
     }
 
+    // loads the entity with the associations of the named entity graph, e.g. Student.Graphs.WITH_GRADES
+    public Optional<T> findById(int id, String fetchGraph) {
+        RootGraph<T> graph = entityGraph(fetchGraph);
+        return sessionService.doAsTransaction(() -> currentSession()
+                .byId(entityClass)
+                .withFetchGraph(graph)
+                .load(id));
+    }
+
     public Optional<T> save(final T object) throws PersistenceException {
-        Session session = sessionService.getSession();
         return sessionService.doAsTransaction(() -> {
-            session.persist(object);
+            currentSession().persist(object);
             return object;
         });
     }
 
+    /**
+     * Persists all objects in one transaction. Every batch-size objects the session is flushed, which sends
+     * them as one JDBC batch, and the flushed objects are detached so the persistence context stays small.
+     * Other entities managed by the session are left untouched.
+     */
+    public List<T> saveAll(final Iterable<T> objects) throws PersistenceException {
+        return sessionService.doAsTransaction(() -> {
+            Session session = currentSession();
+            int flushInterval = flushInterval(session);
+            List<T> saved = new ArrayList<>();
+            List<T> pending = new ArrayList<>(flushInterval);
+            for (T object : objects) {
+                session.persist(object);
+                saved.add(object);
+                pending.add(object);
+                if (pending.size() == flushInterval) {
+                    flushAndDetach(session, pending);
+                }
+            }
+            flushAndDetach(session, pending);
+            return saved;
+        }).orElseGet(List::of);
+    }
+
+    private static int flushInterval(final Session session) {
+        Integer sessionBatchSize = session.getJdbcBatchSize();
+        if (sessionBatchSize != null && sessionBatchSize > 0) {
+            return sessionBatchSize;
+        }
+        int batchSize = session.getSessionFactory().unwrap(SessionFactoryImplementor.class)
+                .getSessionFactoryOptions().getJdbcBatchSize();
+        return batchSize > 0 ? batchSize : DEFAULT_FLUSH_INTERVAL;
+    }
+
+    private static <E> void flushAndDetach(final Session session, final List<E> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        session.flush();
+        for (E object : pending) {
+            session.detach(object);
+        }
+        pending.clear();
+    }
+
     public boolean remove(final T object) throws PersistenceException {
-        Session session = sessionService.getSession();
         return sessionService.doAsTransaction(() -> {
-            session.remove(object);
+            currentSession().remove(managed(object));
             return true;
         }).orElse(false);
     }
 
+    // returns the instance managed by the current session, loading it by id when the given one is detached
+    public T managed(final T object) {
+        Session session = currentSession();
+        T managed = object;
+        if (!session.contains(object)) {
+            Object id = session.getSessionFactory().getPersistenceUnitUtil().getIdentifier(object);
+            managed = session.get(entityClass, id);
+        }
+        if (managed != null && session.isReadOnly(managed)) {
+            // loaded by a read-only transaction, changes would not be flushed
+            session.setReadOnly(managed, false);
+        }
+        return managed;
+    }
+
+    // resolved before the transaction starts, so a wrong graph name fails the call instead of reading as not found
+    protected RootGraph<T> entityGraph(final String name) {
+        RootGraph<?> graph = sessionService.getSessionFactory().findEntityGraphByName(name);
+        if (graph == null) {
+            throw new IllegalArgumentException("Unknown entity graph " + name);
+        }
+        if (graph.getGraphedType().getJavaType() != entityClass) {
+            throw new IllegalArgumentException("Entity graph " + name + " is not defined for " + entityClass.getSimpleName());
+        }
+        @SuppressWarnings("unchecked")
+        RootGraph<T> entityGraph = (RootGraph<T>) graph;
+        return entityGraph;
+    }
+
+    protected Statistics statistics() {
+        return sessionService.getStatistics();
+    }
+
     public Session currentSession() {
         return sessionService.getSession();
     }
+
+    protected <R> Optional<R> doAsTransaction(final Supplier<R> task) {
+        return sessionService.doAsTransaction(task);
+    }
+
+    protected <R> Optional<R> doAsReadOnlyTransaction(final Supplier<R> task) {
+        return sessionService.doAsReadOnlyTransaction(task);
+    }
 }
@@ -1,12 +1,83 @@
 package pl.edu.agh.iisg.to.dao;
 
+import org.hibernate.Cache;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import pl.edu.agh.iisg.to.model.Course;
 import pl.edu.agh.iisg.to.model.Grade;
+import pl.edu.agh.iisg.to.model.Student;
 import pl.edu.agh.iisg.to.session.SessionService;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class GradeDao extends GenericDao<Grade> {
 
     public GradeDao(SessionService sessionService) {
         super(sessionService, Grade.class);
     }
+
+    /**
+     * Persists a grade per student in one transaction; the inserts are sent in JDBC batches on flush. Students
+     * and the course are referenced by id, so neither they nor their grade collections are loaded. Grade
+     * collections already initialized in the session get the new grades, the cached ones are evicted.
+     */
+    public List<Grade> addGrades(final Course course, final Map<Student, Float> grades) {
+        return doAsTransaction(() -> {
+            Session session = currentSession();
+            Cache cache = session.getSessionFactory().getCache();
+            Course courseReference = session.getReference(Course.class, course.id());
+            List<Grade> added = new ArrayList<>(grades.size());
+            for (Map.Entry<Student, Float> entry : grades.entrySet()) {
+                int studentId = entry.getKey().id();
+                Student studentReference = session.getReference(Student.class, studentId);
+                Grade grade = new Grade(studentReference, courseReference, entry.getValue());
+                session.persist(grade);
+                added.add(grade);
+                if (Hibernate.isInitialized(studentReference)) {
+                    addIfInitialized(studentReference.gradeSet(), grade);
+                }
+                cache.evictCollectionData(Student.class.getName() + ".gradeSet", studentId);
+            }
+            if (Hibernate.isInitialized(courseReference)) {
+                added.forEach(grade -> addIfInitialized(courseReference.gradeSet(), grade));
+            }
+            cache.evictCollectionData(Course.class.getName() + ".gradeSet", course.id());
+            return added;
+        }).orElseGet(List::of);
+    }
+
+    private static void addIfInitialized(final Collection<Grade> grades, final Grade grade) {
+        if (Hibernate.isInitialized(grades)) {
+            grades.add(grade);
+        }
+    }
+
+    /**
+     * Grades of every student enrolled in the course, keyed by the student's full name and sorted ascending.
+     * Built from a single projection query, so no students or grades become managed by the session.
+     */
+    public Map<String, List<Float>> findGradesByCourseName(final String courseName) {
+        return doAsReadOnlyTransaction(() -> {
+            Map<String, List<Float>> report = new HashMap<>();
+            try (Stream<Object[]> rows = currentSession().createSelectionQuery(
+                            "SELECT s.firstName, s.lastName, g.grade FROM Course c JOIN c.studentSet s " +
+                                    "LEFT JOIN Grade g ON g.student = s AND g.course = c " +
+                                    "WHERE c.name = :courseName ORDER BY s.lastName, s.firstName, g.grade", Object[].class)
+                    .setParameter("courseName", courseName)
+                    .getResultStream()) {
+                rows.forEach(row -> {
+                    List<Float> grades = report.computeIfAbsent(row[0] + " " + row[1], name -> new ArrayList<>());
+                    if (row[2] != null) {
+                        grades.add((Float) row[2]);
+                    }
+                });
+            }
+            return report;
+        }).orElseGet(Map::of);
+    }
 }
@@ -0,0 +1,42 @@
+package pl.edu.agh.iisg.to.dao;
+
+// lookups of the queries of a DAO in Hibernate's query plan cache; running a query looks up its parsed form
+// and its SQL translation, so a repeated query counts two hits and skips both parsing and SQL generation
+public class QueryPlanStatistics {
+
+    private final int queries;
+
+    private final long hits;
+
+    private final long misses;
+
+    QueryPlanStatistics(final int queries, final long hits, final long misses) {
+        this.queries = queries;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    // distinct queries, one per filter shape
+    public int queries() {
+        return queries;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "queries=" + queries + ", hits=" + hits + ", misses=" + misses
+                + ", hit rate=" + String.format("%.3f", hitRate());
+    }
+}
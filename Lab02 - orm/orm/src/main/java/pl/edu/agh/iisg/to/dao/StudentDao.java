@@ -1,16 +1,33 @@
 package pl.edu.agh.iisg.to.dao;
 
-import jakarta.persistence.PersistenceException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.graph.RootGraph;
+import org.hibernate.query.SelectionQuery;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import pl.edu.agh.iisg.to.export.ExportFormat;
+import pl.edu.agh.iisg.to.export.StudentExportWriter;
 import pl.edu.agh.iisg.to.model.Student;
 import pl.edu.agh.iisg.to.session.SessionService;
 
-import java.util.Collections;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class StudentDao extends GenericDao<Student> {
 
+    private static final int EXPORT_FETCH_SIZE = 1_000;
+
+    // query per filter shape; reusing the same text lets Hibernate's query plan cache
+    // return the parsed query and its SQL instead of building them again
+    private final Map<String, String> filterQueries = new ConcurrentHashMap<>();
+
     public StudentDao(SessionService sessionService) {
         super(sessionService, Student.class);
     }
@@ -21,29 +38,74 @@ public class StudentDao extends GenericDao<Student> {
     }
 
     public List<Student> findAll() {
-        try {
+        return doAsReadOnlyTransaction(() -> {
             Session session = currentSession();
             return session.createQuery(
                     "SELECT s FROM Student s ORDER BY s.lastName", Student.class)
                     .getResultList();
+        }).orElseGet(List::of);
+    }
+
+    public List<Student> find(final StudentFilter filter) {
+        String hql = filterQueries.computeIfAbsent(filter.shape(), shape -> filter.toHql());
+        return doAsReadOnlyTransaction(() -> {
+            SelectionQuery<Student> query = currentSession().createSelectionQuery(hql, Student.class);
+            filter.bind(query);
+            return query.getResultList();
+        }).orElseGet(List::of);
+    }
+
+    // plan cache lookups of the queries run by find so far, requires hibernate.generate_statistics
+    public QueryPlanStatistics filterPlanStatistics() {
+        Statistics statistics = statistics();
+        long hits = 0;
+        long misses = 0;
+        for (String hql : filterQueries.values()) {
+            QueryStatistics queryStatistics = statistics.getQueryStatistics(hql);
+            hits += queryStatistics.getPlanCacheHitCount();
+            misses += queryStatistics.getPlanCacheMissCount();
         }
-        catch (PersistenceException e) {
-            e.printStackTrace();
-            return List.of();
-        }
+        return new QueryPlanStatistics(filterQueries.size(), hits, misses);
+    }
+
+    /**
+     * Writes every student with their grades, in the order of {@link #findAll()}. Rows are scrolled from a single
+     * projection query, so no entities enter the session and memory stays constant however many students there are.
+     * Returns the number of exported students.
+     */
+    public Optional<Long> exportAll(final Writer writer, final ExportFormat format) {
+        return doAsReadOnlyTransaction(() -> {
+            try (ScrollableResults<Object[]> rows = currentSession().createSelectionQuery(
+                            "SELECT s.id, s.indexNumber, s.firstName, s.lastName, c.name, g.grade FROM Student s " +
+                                    "LEFT JOIN s.gradeSet g LEFT JOIN g.course c " +
+                                    "ORDER BY s.lastName, s.id, c.name, g.grade", Object[].class)
+                    .setFetchSize(EXPORT_FETCH_SIZE)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                StudentExportWriter export = new StudentExportWriter(writer, format);
+                while (rows.next()) {
+                    Object[] row = rows.get();
+                    export.row((Integer) row[0], (Integer) row[1], (String) row[2], (String) row[3],
+                            (String) row[4], (Float) row[5]);
+                }
+                return export.finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     public Optional<Student> findByIndexNumber(final int indexNumber) {
-        try{
-            Session session = currentSession();
-            Student student = session.createQuery("SELECT s FROM Student s WHERE s.indexNumber = :indexNumber", Student.class)
-                    .setParameter("indexNumber", indexNumber)
-                    .getSingleResult();
-            return Optional.of(student);
-        }
-        catch (PersistenceException e) {
-            e.printStackTrace();
-            return Optional.empty();
-        }
+        // resolved through the natural-id cache, the query runs only on a cache miss
+        return doAsTransaction(() -> currentSession()
+                .bySimpleNaturalId(Student.class)
+                .load(indexNumber));
+    }
+
+    public Optional<Student> findByIndexNumber(final int indexNumber, final String fetchGraph) {
+        RootGraph<Student> graph = entityGraph(fetchGraph);
+        return doAsTransaction(() -> currentSession()
+                .bySimpleNaturalId(Student.class)
+                .withFetchGraph(graph)
+                .load(indexNumber));
     }
 }
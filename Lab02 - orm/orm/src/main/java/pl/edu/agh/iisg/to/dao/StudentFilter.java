@@ -0,0 +1,164 @@
+package pl.edu.agh.iisg.to.dao;
+
+import org.hibernate.query.SelectionQuery;
+import pl.edu.agh.iisg.to.model.Course;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Criteria of a student search run by {@link StudentDao#find(StudentFilter)}. Unset criteria are left out of the
+ * query. The query text depends only on which criteria are set and the sort, never on their values or the limit,
+ * which is applied as a query option, so every search of the same shape runs the same query with other parameters.
+ */
+public class StudentFilter {
+
+    private static final String AVERAGE_GRADE = "(SELECT AVG(g.grade) FROM Grade g WHERE g.student = s)";
+
+    public enum Sort {
+        LAST_NAME("s.lastName", "s.firstName"),
+        INDEX_NUMBER("s.indexNumber"),
+        // students without grades come first in ascending order
+        AVERAGE_GRADE(StudentFilter.AVERAGE_GRADE);
+
+        private final List<String> keys;
+
+        Sort(final String... keys) {
+            this.keys = List.of(keys);
+        }
+    }
+
+    private String lastNamePrefix;
+
+    private Integer minIndexNumber;
+
+    private Integer maxIndexNumber;
+
+    private Integer courseId;
+
+    private Float minAverageGrade;
+
+    private Float maxAverageGrade;
+
+    private Sort sort = Sort.LAST_NAME;
+
+    private boolean descending;
+
+    private Integer limit;
+
+    public StudentFilter lastNamePrefix(final String prefix) {
+        this.lastNamePrefix = prefix;
+        return this;
+    }
+
+    // both bounds inclusive
+    public StudentFilter indexNumberBetween(final int from, final int to) {
+        this.minIndexNumber = from;
+        this.maxIndexNumber = to;
+        return this;
+    }
+
+    public StudentFilter indexNumberFrom(final int from) {
+        this.minIndexNumber = from;
+        return this;
+    }
+
+    public StudentFilter indexNumberTo(final int to) {
+        this.maxIndexNumber = to;
+        return this;
+    }
+
+    public StudentFilter enrolledIn(final Course course) {
+        this.courseId = course.id();
+        return this;
+    }
+
+    // the grade thresholds apply to the average of all the student's grades, students without grades never match
+    public StudentFilter averageGradeAtLeast(final float grade) {
+        this.minAverageGrade = grade;
+        return this;
+    }
+
+    public StudentFilter averageGradeBelow(final float grade) {
+        this.maxAverageGrade = grade;
+        return this;
+    }
+
+    public StudentFilter sortBy(final Sort sort, final boolean descending) {
+        this.sort = sort;
+        this.descending = descending;
+        return this;
+    }
+
+    public StudentFilter limit(final int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    // identifies the query built by toHql, two filters of the same shape differ only in parameter values and limit
+    String shape() {
+        return (lastNamePrefix != null ? "p" : "") + (minIndexNumber != null ? "i" : "") + (maxIndexNumber != null ? "I" : "")
+                + (courseId != null ? "c" : "") + (minAverageGrade != null ? "g" : "") + (maxAverageGrade != null ? "G" : "")
+                + "/" + sort + (descending ? "/desc" : "/asc");
+    }
+
+    String toHql() {
+        List<String> conditions = new ArrayList<>();
+        if (lastNamePrefix != null) {
+            conditions.add("s.lastName LIKE :lastNamePrefix ESCAPE '\\'");
+        }
+        if (minIndexNumber != null) {
+            conditions.add("s.indexNumber >= :minIndexNumber");
+        }
+        if (maxIndexNumber != null) {
+            conditions.add("s.indexNumber <= :maxIndexNumber");
+        }
+        if (courseId != null) {
+            conditions.add("EXISTS (SELECT 1 FROM Course c JOIN c.studentSet e WHERE c.id = :courseId AND e = s)");
+        }
+        if (minAverageGrade != null) {
+            conditions.add(AVERAGE_GRADE + " >= :minAverageGrade");
+        }
+        if (maxAverageGrade != null) {
+            conditions.add(AVERAGE_GRADE + " < :maxAverageGrade");
+        }
+        StringBuilder hql = new StringBuilder("SELECT s FROM Student s");
+        if (!conditions.isEmpty()) {
+            hql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        List<String> order = new ArrayList<>();
+        for (String key : sort.keys) {
+            order.add(key + (descending ? " DESC" : ""));
+        }
+        // ties are broken by id, so a limited search returns the same students every time
+        order.add("s.id");
+        return hql.append(" ORDER BY ").append(String.join(", ", order)).toString();
+    }
+
+    void bind(final SelectionQuery<?> query) {
+        if (lastNamePrefix != null) {
+            query.setParameter("lastNamePrefix", lastNamePrefix.replaceAll("[\\\\%_]", "\\\\$0") + "%");
+        }
+        if (minIndexNumber != null) {
+            query.setParameter("minIndexNumber", minIndexNumber);
+        }
+        if (maxIndexNumber != null) {
+            query.setParameter("maxIndexNumber", maxIndexNumber);
+        }
+        if (courseId != null) {
+            query.setParameter("courseId", courseId);
+        }
+        if (minAverageGrade != null) {
+            query.setParameter("minAverageGrade", minAverageGrade.doubleValue());
+        }
+        if (maxAverageGrade != null) {
+            query.setParameter("maxAverageGrade", maxAverageGrade.doubleValue());
+        }
+        if (limit != null) {
+            query.setMaxResults(limit);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package pl.edu.agh.iisg.to.dao;
+
+// a student's place in a course by average grade; students with the same average share a rank
+public class StudentRank {
+
+    private final int courseId;
+
+    private final String courseName;
+
+    private final int studentId;
+
+    private final int indexNumber;
+
+    private final String firstName;
+
+    private final String lastName;
+
+    private final double averageGrade;
+
+    private final long gradeCount;
+
+    private final long rank;
+
+    StudentRank(final Object[] row) {
+        this.courseId = ((Number) row[0]).intValue();
+        this.courseName = (String) row[1];
+        this.studentId = ((Number) row[2]).intValue();
+        this.indexNumber = ((Number) row[3]).intValue();
+        this.firstName = (String) row[4];
+        this.lastName = (String) row[5];
+        this.averageGrade = ((Number) row[6]).doubleValue();
+        this.gradeCount = ((Number) row[7]).longValue();
+        this.rank = ((Number) row[8]).longValue();
+    }
+
+    public int courseId() {
+        return courseId;
+    }
+
+    public String courseName() {
+        return courseName;
+    }
+
+    public int studentId() {
+        return studentId;
+    }
+
+    public int indexNumber() {
+        return indexNumber;
+    }
+
+    public String firstName() {
+        return firstName;
+    }
+
+    public String lastName() {
+        return lastName;
+    }
+
+    public double averageGrade() {
+        return averageGrade;
+    }
+
+    public long gradeCount() {
+        return gradeCount;
+    }
+
+    // 1 for the best average, ranks after a tie are skipped as in RANK()
+    public long rank() {
+        return rank;
+    }
+
+    @Override
+    public String toString() {
+        return courseName + " #" + rank + " " + firstName + " " + lastName + " (" + averageGrade + ")";
+    }
+}
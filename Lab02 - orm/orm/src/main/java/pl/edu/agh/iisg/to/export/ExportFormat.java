@@ -0,0 +1,10 @@
+package pl.edu.agh.iisg.to.export;
+
+public enum ExportFormat {
+
+    // one row per grade, a student without grades gets a single row with empty course and grade
+    CSV,
+
+    // one JSON object per student, with the student's grades nested
+    JSON_LINES
+}
@@ -0,0 +1,134 @@
+package pl.edu.agh.iisg.to.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes student rows, one per grade and ordered by student, in the given format. Only the grades of the current
+ * student are buffered, so memory does not depend on the number of students.
+ */
+public class StudentExportWriter {
+
+    private static final String CSV_HEADER = "index_number,first_name,last_name,course,grade";
+
+    private final Writer writer;
+
+    private final ExportFormat format;
+
+    private Integer currentId;
+
+    private int indexNumber;
+
+    private String firstName;
+
+    private String lastName;
+
+    private final List<String> courses = new ArrayList<>();
+
+    private final List<Float> grades = new ArrayList<>();
+
+    private long students;
+
+    public StudentExportWriter(final Writer writer, final ExportFormat format) throws IOException {
+        this.writer = writer;
+        this.format = format;
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+    }
+
+    // course and grade are null for a student without grades
+    public void row(final int studentId, final int indexNumber, final String firstName, final String lastName,
+                    final String course, final Float grade) throws IOException {
+        if (currentId == null || currentId != studentId) {
+            writeStudent();
+            currentId = studentId;
+            this.indexNumber = indexNumber;
+            this.firstName = firstName;
+            this.lastName = lastName;
+        }
+        if (grade != null) {
+            courses.add(course);
+            grades.add(grade);
+        }
+    }
+
+    // writes the last student and returns the number of students written
+    public long finish() throws IOException {
+        writeStudent();
+        writer.flush();
+        return students;
+    }
+
+    private void writeStudent() throws IOException {
+        if (currentId == null) {
+            return;
+        }
+        if (format == ExportFormat.CSV) {
+            writeCsv();
+        } else {
+            writeJsonLine();
+        }
+        students++;
+        currentId = null;
+        courses.clear();
+        grades.clear();
+    }
+
+    private void writeCsv() throws IOException {
+        String student = indexNumber + "," + csv(firstName) + "," + csv(lastName) + ",";
+        if (grades.isEmpty()) {
+            writer.write(student + ",\n");
+        }
+        for (int i = 0; i < grades.size(); i++) {
+            writer.write(student + csv(courses.get(i)) + "," + grades.get(i) + "\n");
+        }
+    }
+
+    private void writeJsonLine() throws IOException {
+        StringBuilder line = new StringBuilder()
+                .append("{\"indexNumber\":").append(indexNumber)
+                .append(",\"firstName\":").append(json(firstName))
+                .append(",\"lastName\":").append(json(lastName))
+                .append(",\"grades\":[");
+        for (int i = 0; i < grades.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append("{\"course\":").append(json(courses.get(i)))
+                    .append(",\"grade\":").append(grades.get(i)).append('}');
+        }
+        writer.write(line.append("]}\n").toString());
+    }
+
+    private static String csv(final String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    private static String json(final String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        return escaped.append('"').toString();
+    }
+}
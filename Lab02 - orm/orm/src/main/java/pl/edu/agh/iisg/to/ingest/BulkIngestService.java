@@ -0,0 +1,175 @@
+package pl.edu.agh.iisg.to.ingest;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.Grade;
+import pl.edu.agh.iisg.to.model.Student;
+import pl.edu.agh.iisg.to.stats.CourseStatsChanges;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Imports students, courses, enrollments and grades through a {@link StatelessSession}, so nothing is kept in a
+ * persistence context and inserts go out in JDBC batches. Students and courses are resolved by natural key from
+ * in-memory maps; grades and enrollments are only streamed through, so memory does not grow with their number.
+ */
+public class BulkIngestService {
+
+    private static final int DEFAULT_COMMIT_INTERVAL = 10_000;
+
+    private static final int ENROLLMENT_BATCH_SIZE = 50;
+
+    private static final String INSERT_ENROLLMENT = "INSERT OR IGNORE INTO " + Course.ENROLLMENT_TABLE_NAME + " ("
+            + Course.EnrollmentColumns.COURSE_ID + ", " + Course.EnrollmentColumns.STUDENT_ID + ") VALUES (?, ?)";
+
+    private final SessionFactory sessionFactory;
+
+    private final int commitInterval;
+
+    public BulkIngestService(final SessionFactory sessionFactory) {
+        this(sessionFactory, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    public BulkIngestService(final SessionFactory sessionFactory, final int commitInterval) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("Commit interval must be positive");
+        }
+        this.sessionFactory = sessionFactory;
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Inserts the records in source order, committing every commit-interval records, which keeps the rollback
+     * journal small. A record referring to a student or course that neither exists nor was imported earlier
+     * in the source is skipped, as is a student or course that already exists.
+     */
+    public IngestResult ingest(final Stream<IngestRecord> records) {
+        IngestResult result = new IngestResult();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Map<Integer, Student> students = new HashMap<>();
+            Map<String, Course> courses = new HashMap<>();
+            // inserts of a stateless session reach no listener, so the courses it touches are recounted on commit
+            CourseStatsChanges courseStats = CourseStatsChanges.of((SharedSessionContractImplementor) session);
+            Transaction transaction = session.beginTransaction();
+            try {
+                session.createSelectionQuery("FROM Student", Student.class)
+                        .getResultStream()
+                        .forEach(student -> students.put(student.indexNumber(), student));
+                session.createSelectionQuery("FROM Course", Course.class)
+                        .getResultStream()
+                        .forEach(course -> courses.put(course.name(), course));
+
+                IngestResult chunk = new IngestResult();
+                List<int[]> enrollments = new ArrayList<>(ENROLLMENT_BATCH_SIZE);
+                int inChunk = 0;
+                Iterator<IngestRecord> iterator = records.iterator();
+                while (iterator.hasNext()) {
+                    IngestRecord record = iterator.next();
+                    switch (record.type()) {
+                        case STUDENT -> {
+                            if (students.containsKey(record.indexNumber())) {
+                                chunk.addSkipped();
+                            } else {
+                                Student student = new Student(record.firstName(), record.lastName(), record.indexNumber());
+                                session.insert(student);
+                                students.put(student.indexNumber(), student);
+                                chunk.addStudent();
+                            }
+                        }
+                        case COURSE -> {
+                            if (courses.containsKey(record.courseName())) {
+                                chunk.addSkipped();
+                            } else {
+                                Course course = new Course(record.courseName());
+                                session.insert(course);
+                                courses.put(course.name(), course);
+                                courseStats.recount(course.id());
+                                chunk.addCourse();
+                            }
+                        }
+                        case ENROLLMENT, GRADE -> {
+                            Student student = students.get(record.indexNumber());
+                            Course course = courses.get(record.courseName());
+                            if (student == null || course == null) {
+                                chunk.addSkipped();
+                            } else if (record.type() == IngestRecord.Type.GRADE) {
+                                session.insert(new Grade(student, course, record.grade()));
+                                courseStats.recount(course.id());
+                                chunk.addGrade();
+                            } else {
+                                enrollments.add(new int[]{course.id(), student.id()});
+                                courseStats.recount(course.id());
+                                if (enrollments.size() == ENROLLMENT_BATCH_SIZE) {
+                                    insertEnrollments(session, enrollments, chunk);
+                                }
+                            }
+                        }
+                    }
+                    if (++inChunk == commitInterval) {
+                        insertEnrollments(session, enrollments, chunk);
+                        transaction.commit();
+                        result.addAll(chunk);
+                        chunk = new IngestResult();
+                        inChunk = 0;
+                        transaction = session.beginTransaction();
+                    }
+                }
+                insertEnrollments(session, enrollments, chunk);
+                transaction.commit();
+                result.addAll(chunk);
+                result.markCompleted();
+            } catch (Exception e) {
+                e.printStackTrace();
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        } finally {
+            evictCollections();
+        }
+        return result;
+    }
+
+    private static void insertEnrollments(final StatelessSession session, final List<int[]> enrollments,
+                                          final IngestResult chunk) {
+        if (enrollments.isEmpty()) {
+            return;
+        }
+        session.doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_ENROLLMENT)) {
+                for (int[] enrollment : enrollments) {
+                    statement.setInt(1, enrollment[0]);
+                    statement.setInt(2, enrollment[1]);
+                    statement.addBatch();
+                }
+                for (int count : statement.executeBatch()) {
+                    if (count > 0) {
+                        chunk.addEnrollment();
+                    } else {
+                        chunk.addSkipped();
+                    }
+                }
+            }
+        });
+        enrollments.clear();
+    }
+
+    // grades and enrollments were written past the cached collections of the students and courses
+    private void evictCollections() {
+        Cache cache = sessionFactory.getCache();
+        cache.evictCollectionData(Student.class.getName() + ".gradeSet");
+        cache.evictCollectionData(Student.class.getName() + ".courseSet");
+        cache.evictCollectionData(Course.class.getName() + ".studentSet");
+        cache.evictCollectionData(Course.class.getName() + ".gradeSet");
+    }
+}
@@ -0,0 +1,74 @@
+package pl.edu.agh.iisg.to.ingest;
+
+/**
+ * One row of a bulk import. Students and courses are identified by their natural keys,
+ * the index number and the course name.
+ */
+public final class IngestRecord {
+
+    public enum Type {
+        STUDENT, COURSE, ENROLLMENT, GRADE
+    }
+
+    private final Type type;
+
+    private final String firstName;
+
+    private final String lastName;
+
+    private final int indexNumber;
+
+    private final String courseName;
+
+    private final float grade;
+
+    private IngestRecord(final Type type, final String firstName, final String lastName,
+                         final int indexNumber, final String courseName, final float grade) {
+        this.type = type;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.indexNumber = indexNumber;
+        this.courseName = courseName;
+        this.grade = grade;
+    }
+
+    public static IngestRecord student(final String firstName, final String lastName, final int indexNumber) {
+        return new IngestRecord(Type.STUDENT, firstName, lastName, indexNumber, null, 0);
+    }
+
+    public static IngestRecord course(final String name) {
+        return new IngestRecord(Type.COURSE, null, null, 0, name, 0);
+    }
+
+    public static IngestRecord enrollment(final int indexNumber, final String courseName) {
+        return new IngestRecord(Type.ENROLLMENT, null, null, indexNumber, courseName, 0);
+    }
+
+    public static IngestRecord grade(final int indexNumber, final String courseName, final float grade) {
+        return new IngestRecord(Type.GRADE, null, null, indexNumber, courseName, grade);
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public String firstName() {
+        return firstName;
+    }
+
+    public String lastName() {
+        return lastName;
+    }
+
+    public int indexNumber() {
+        return indexNumber;
+    }
+
+    public String courseName() {
+        return courseName;
+    }
+
+    public float grade() {
+        return grade;
+    }
+}
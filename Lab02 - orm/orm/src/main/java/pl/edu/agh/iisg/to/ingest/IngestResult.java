@@ -0,0 +1,84 @@
+package pl.edu.agh.iisg.to.ingest;
+
+// rows committed by a bulk import
+public class IngestResult {
+
+    private long students;
+
+    private long courses;
+
+    private long enrollments;
+
+    private long grades;
+
+    private long skipped;
+
+    private boolean completed;
+
+    IngestResult() {
+    }
+
+    void addStudent() {
+        students++;
+    }
+
+    void addCourse() {
+        courses++;
+    }
+
+    void addEnrollment() {
+        enrollments++;
+    }
+
+    void addGrade() {
+        grades++;
+    }
+
+    void addSkipped() {
+        skipped++;
+    }
+
+    void addAll(final IngestResult other) {
+        students += other.students;
+        courses += other.courses;
+        enrollments += other.enrollments;
+        grades += other.grades;
+        skipped += other.skipped;
+    }
+
+    void markCompleted() {
+        completed = true;
+    }
+
+    public long students() {
+        return students;
+    }
+
+    public long courses() {
+        return courses;
+    }
+
+    public long enrollments() {
+        return enrollments;
+    }
+
+    public long grades() {
+        return grades;
+    }
+
+    // records referring to an unknown student or course, and students or courses that already existed
+    public long skipped() {
+        return skipped;
+    }
+
+    // false when the import stopped on an error, the counts then cover the chunks committed before it
+    public boolean completed() {
+        return completed;
+    }
+
+    @Override
+    public String toString() {
+        return "students=" + students + ", courses=" + courses + ", enrollments=" + enrollments
+                + ", grades=" + grades + ", skipped=" + skipped + ", completed=" + completed;
+    }
+}
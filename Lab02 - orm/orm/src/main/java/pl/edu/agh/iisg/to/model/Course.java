@@ -2,14 +2,23 @@ package pl.edu.agh.iisg.to.model;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedSubgraph;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.OptimisticLock;
+import pl.edu.agh.iisg.to.model.id.BlockId;
 
 import java.util.HashSet;
 import java.util.Objects;
@@ -17,26 +26,47 @@ import java.util.Set;
 
 @Entity
 @Table(name = Course.TABLE_NAME)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "course")
+@NaturalIdCache(region = "course.natural-id")
+@NamedEntityGraph(name = Course.Graphs.WITH_ROSTER, attributeNodes = @NamedAttributeNode("studentSet"))
+@NamedEntityGraph(name = Course.Graphs.WITH_ROSTER_AND_GRADES,
+        attributeNodes = {@NamedAttributeNode("studentSet"), @NamedAttributeNode(value = "gradeSet", subgraph = "grade")},
+        subgraphs = @NamedSubgraph(name = "grade", attributeNodes = @NamedAttributeNode("student")))
 public class Course {
 
     public static final String TABLE_NAME = "course";
 
+    public static final String ENROLLMENT_TABLE_NAME = "student_course";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.TABLE)
+    @BlockId
     @Column(name = Columns.ID)
     private int id;
 
+    @NaturalId
     @Column(name = Columns.NAME, nullable = false, length = 50, unique = true)
     private String name;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(name = Columns.VERSION, nullable = false)
+    private long version;
+
+    // a set is written as row inserts and deletes in the join table, so concurrent roster changes
+    // cannot overwrite each other and need not conflict
     @ManyToMany
+    @OptimisticLock(excluded = true)
     @JoinTable(
-            name = "student_course",
-            joinColumns = @JoinColumn(name = "student_id", referencedColumnName = "ID"),
-            inverseJoinColumns = @JoinColumn(name = "course_id", referencedColumnName = "ID"))
+            name = Course.ENROLLMENT_TABLE_NAME,
+            joinColumns = @JoinColumn(name = EnrollmentColumns.COURSE_ID, referencedColumnName = "ID"),
+            inverseJoinColumns = @JoinColumn(name = EnrollmentColumns.STUDENT_ID, referencedColumnName = "ID"))
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "course.studentSet")
     private Set<Student> studentSet = new HashSet<>();
 
+    // the grade rows are owned by Grade, so adding one does not conflict with other writers of the course
     @OneToMany(mappedBy = "course")
+    @OptimisticLock(excluded = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "course.gradeSet")
     private Set<Grade> gradeSet = new HashSet<>();
 
     Course() {
@@ -54,6 +84,10 @@ public class Course {
         return name;
     }
 
+    public long version() {
+        return version;
+    }
+
     public Set<Student> studentSet() {
         return studentSet;
     }
@@ -68,6 +102,26 @@ public class Course {
 
         public static final String NAME = "name";
 
+        public static final String VERSION = "version";
+
+    }
+
+    // the columns are named after what they hold in reverse; existing databases keep the course id in
+    // student_id and the student id in course_id, so the constants name the content and map to that layout
+    public static class EnrollmentColumns {
+
+        public static final String STUDENT_ID = "course_id";
+
+        public static final String COURSE_ID = "student_id";
+    }
+
+    // fetch plans accepted by the DAO finders
+    public static class Graphs {
+
+        public static final String WITH_ROSTER = "Course.withRoster";
+
+        // enrolled students and grades, each grade with its student
+        public static final String WITH_ROSTER_AND_GRADES = "Course.withRosterAndGrades";
     }
 
     @Override
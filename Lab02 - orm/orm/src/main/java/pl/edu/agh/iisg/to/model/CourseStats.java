@@ -0,0 +1,78 @@
+package pl.edu.agh.iisg.to.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.Immutable;
+
+import java.util.OptionalDouble;
+
+/**
+ * Enrollment and grade totals of a course, one row per course. The rows are written by
+ * {@link pl.edu.agh.iisg.to.stats.CourseStatsChanges} in the transaction that changes the enrollments or grades,
+ * so they are read only here.
+ */
+@Entity
+@Immutable
+@Table(name = CourseStats.TABLE_NAME)
+public class CourseStats {
+
+    public static final String TABLE_NAME = "course_stats";
+
+    @Id
+    @Column(name = Columns.COURSE_ID)
+    private int courseId;
+
+    @Column(name = Columns.COURSE_NAME, nullable = false, length = 50)
+    private String courseName;
+
+    @Column(name = Columns.ENROLLED_COUNT, nullable = false)
+    private long enrolledCount;
+
+    @Column(name = Columns.GRADE_COUNT, nullable = false)
+    private long gradeCount;
+
+    @Column(name = Columns.GRADE_SUM, nullable = false)
+    private double gradeSum;
+
+    CourseStats() {
+    }
+
+    public int courseId() {
+        return courseId;
+    }
+
+    public String courseName() {
+        return courseName;
+    }
+
+    public long enrolledCount() {
+        return enrolledCount;
+    }
+
+    public long gradeCount() {
+        return gradeCount;
+    }
+
+    public double gradeSum() {
+        return gradeSum;
+    }
+
+    public OptionalDouble averageGrade() {
+        return gradeCount == 0 ? OptionalDouble.empty() : OptionalDouble.of(gradeSum / gradeCount);
+    }
+
+    public static class Columns {
+
+        public static final String COURSE_ID = "course_id";
+
+        public static final String COURSE_NAME = "course_name";
+
+        public static final String ENROLLED_COUNT = "enrolled_count";
+
+        public static final String GRADE_COUNT = "grade_count";
+
+        public static final String GRADE_SUM = "grade_sum";
+    }
+}
@@ -4,23 +4,34 @@ package pl.edu.agh.iisg.to.model;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
 import jakarta.persistence.Table;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import pl.edu.agh.iisg.to.model.id.BlockId;
 
 import java.util.Objects;
 
 @Entity
-@Table(name = Grade.TABLE_NAME)
+// covers the per course and student averages of the rankings in CourseDao
+@Table(name = Grade.TABLE_NAME, indexes = @Index(name = "grade_course_student",
+        columnList = Grade.Columns.COURSE_ID + ", " + Grade.Columns.STUDENT_ID + ", " + Grade.Columns.GRADE))
+// cached as well, so cached grade collections do not load their elements one by one
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "grade")
+@NamedEntityGraph(name = Grade.Graphs.WITH_STUDENT_AND_COURSE,
+        attributeNodes = {@NamedAttributeNode("student"), @NamedAttributeNode("course")})
 public class Grade {
 
     public static final String TABLE_NAME = "grade";
 
     @Id
-    @GeneratedValue(strategy = GenerationType.TABLE)
+    // grades are inserted far more often than students and courses
+    @BlockId(blockSize = 200)
     @Column(name = Columns.ID)
     private int id;
 
@@ -72,6 +83,12 @@ public class Grade {
 
     }
 
+    // fetch plans accepted by the DAO finders
+    public static class Graphs {
+
+        public static final String WITH_STUDENT_AND_COURSE = "Grade.withStudentAndCourse";
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
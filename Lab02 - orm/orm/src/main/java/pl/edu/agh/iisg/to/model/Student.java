@@ -2,12 +2,21 @@ package pl.edu.agh.iisg.to.model;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.ManyToMany;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedSubgraph;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.OptimisticLock;
+import pl.edu.agh.iisg.to.model.id.BlockId;
 
 import java.util.HashSet;
 import java.util.Objects;
@@ -15,12 +24,18 @@ import java.util.Set;
 
 @Entity
 @Table(name = Student.TABLE_NAME)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "student")
+@NaturalIdCache(region = "student.natural-id")
+@NamedEntityGraph(name = Student.Graphs.WITH_GRADES,
+        attributeNodes = @NamedAttributeNode(value = "gradeSet", subgraph = "grade"),
+        subgraphs = @NamedSubgraph(name = "grade", attributeNodes = @NamedAttributeNode("course")))
+@NamedEntityGraph(name = Student.Graphs.WITH_COURSES, attributeNodes = @NamedAttributeNode("courseSet"))
 public class Student {
 
     public static final String TABLE_NAME = "student";
 
     @Id
-    @GeneratedValue(strategy = GenerationType.TABLE)
+    @BlockId
     @Column(name = Student.Columns.ID)
     private int id;
 
@@ -30,13 +45,24 @@ public class Student {
     @Column(name = Columns.LAST_NAME, nullable = false, length = 50)
     private String lastName;
 
+    @NaturalId
     @Column(name = Columns.INDEX_NUMBER, nullable = false, unique = true)
     private int indexNumber;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(name = Columns.VERSION, nullable = false)
+    private long version;
+
+    // both collections are owned by the other side, changing them does not conflict with other writers of the student
     @OneToMany(mappedBy = "student")
+    @OptimisticLock(excluded = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "student.gradeSet")
     private Set<Grade> gradeSet = new HashSet<>();
 
     @ManyToMany(mappedBy = "studentSet")
+    @OptimisticLock(excluded = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "student.courseSet")
     private Set<Course> courseSet = new HashSet<>();
 
     Student() {
@@ -68,6 +94,10 @@ public class Student {
         return indexNumber;
     }
 
+    public long version() {
+        return version;
+    }
+
     public Set<Course> courseSet() {
         return courseSet;
     }
@@ -85,6 +115,17 @@ public class Student {
         public static final String LAST_NAME = "last_name";
 
         public static final String INDEX_NUMBER = "index_number";
+
+        public static final String VERSION = "version";
+    }
+
+    // fetch plans accepted by the DAO finders
+    public static class Graphs {
+
+        // grades together with their courses
+        public static final String WITH_GRADES = "Student.withGrades";
+
+        public static final String WITH_COURSES = "Student.withCourses";
     }
 
     @Override
@@ -0,0 +1,23 @@
+package pl.edu.agh.iisg.to.model.id;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Identifier reserved in blocks from the id_blocks table, see {@link BlockIdGenerator}.
+ */
+@IdGeneratorType(BlockIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface BlockId {
+
+    // row of the id_blocks table, the entity table name by default
+    String name() default "";
+
+    // overridden by the hibernate.to.id.block_size.<name> setting
+    int blockSize() default 50;
+}
@@ -0,0 +1,195 @@
+package pl.edu.agh.iisg.to.model.id;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
+import org.hibernate.engine.jdbc.connections.spi.JdbcConnectionAccess;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.resource.transaction.spi.TransactionObserver;
+import org.hibernate.service.ServiceRegistry;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reserves identifiers in blocks and hands them out from memory.
+ * <p>
+ * Each session draws ids from its own block. Once the transaction that reserved a block commits, the unused
+ * part of it is returned to a pool shared by all sessions of the factory, so short units of work do not
+ * reserve a block each. The block size is set per entity with {@link BlockId#blockSize()} and can be overridden
+ * with the {@code hibernate.to.id.block_size.<name>} setting.
+ * <p>
+ * The TABLE strategy reserves blocks in a separate transaction on a second connection. SQLite allows a single
+ * writer, so once a transaction has written anything that reservation waits for the transaction's own lock and
+ * fails with SQLITE_BUSY. Blocks are therefore reserved on the session's connection, inside its transaction:
+ * concurrent reservations are serialized by the database lock, and a block reserved by a transaction that is
+ * rolled back is dropped, because the reservation is rolled back with it.
+ * <p>
+ * The id_blocks table itself is created when the session factory starts, on a connection of its own that commits
+ * right away. SQLite DDL is transactional, so a table created inside the first reserving transaction would
+ * disappear if that transaction rolled back.
+ */
+public class BlockIdGenerator implements BeforeExecutionGenerator {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String BLOCK_SIZE_PREFIX = "hibernate.to.id.block_size.";
+
+    private static final String CREATE_TABLE =
+            "CREATE TABLE IF NOT EXISTS id_blocks (name VARCHAR(255) PRIMARY KEY, next_val BIGINT NOT NULL)";
+
+    private static final String RESERVE = "UPDATE id_blocks SET next_val = next_val + ? WHERE name = ? RETURNING next_val";
+
+    // the first block starts after the ids already present in the table
+    private static final String INSERT_ROW = "INSERT OR IGNORE INTO id_blocks (name, next_val) SELECT ?, COALESCE(MAX(%s), 0) + 1 FROM %s";
+
+    private final String name;
+
+    private final int blockSize;
+
+    private final String insertRow;
+
+    private final boolean longId;
+
+    private final transient Map<SharedSessionContractImplementor, SessionBlock> blocks =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    // committed, not yet used ranges
+    private final transient Queue<Range> pool = new ConcurrentLinkedQueue<>();
+
+    public BlockIdGenerator(final BlockId config, final Member member, final CustomIdGeneratorCreationContext context) {
+        PersistentClass entity = context.getPersistentClass();
+        String table = entity.getTable().getName();
+        this.name = config.name().isEmpty() ? table : config.name();
+        this.blockSize = context.getServiceRegistry().requireService(ConfigurationService.class)
+                .getSetting(BLOCK_SIZE_PREFIX + name, StandardConverters.INTEGER, config.blockSize());
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size of " + name + " must be positive");
+        }
+        createTable(context.getServiceRegistry());
+        this.insertRow = INSERT_ROW.formatted(entity.getIdentifier().getColumns().get(0).getName(), table);
+        Class<?> type = member instanceof Field field ? field.getType() : ((Method) member).getReturnType();
+        this.longId = type == long.class || type == Long.class;
+    }
+
+    @Override
+    public Object generate(final SharedSessionContractImplementor session, final Object owner,
+                           final Object currentValue, final EventType eventType) {
+        SessionBlock block = blocks.computeIfAbsent(session, s -> {
+            SessionBlock created = new SessionBlock();
+            s.getTransactionCoordinator().addObserver(created);
+            return created;
+        });
+        if (block.next >= block.end) {
+            Range range = pool.poll();
+            if (range != null) {
+                block.next = range.next();
+                block.end = range.end();
+            } else {
+                block.next = reserve(session);
+                block.end = block.next + blockSize;
+                block.reservedInTransaction = true;
+            }
+        }
+        long id = block.next++;
+        return longId ? (Object) id : (Object) Math.toIntExact(id);
+    }
+
+    private long reserve(final SharedSessionContractImplementor session) {
+        Connection connection = session.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection();
+        try {
+            long next = reserve(connection);
+            if (next < 0) {
+                try (PreparedStatement statement = connection.prepareStatement(insertRow)) {
+                    statement.setString(1, name);
+                    statement.executeUpdate();
+                }
+                next = reserve(connection);
+            }
+            return next - blockSize;
+        } catch (SQLException e) {
+            throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "could not reserve id block for " + name, RESERVE);
+        }
+    }
+
+    private static void createTable(final ServiceRegistry serviceRegistry) {
+        JdbcServices jdbcServices = serviceRegistry.requireService(JdbcServices.class);
+        JdbcConnectionAccess connectionAccess = jdbcServices.getBootstrapJdbcConnectionAccess();
+        try {
+            Connection connection = connectionAccess.obtainConnection();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+            } finally {
+                connectionAccess.releaseConnection(connection);
+            }
+        } catch (SQLException e) {
+            throw jdbcServices.getSqlExceptionHelper().convert(e, "could not create the id_blocks table", CREATE_TABLE);
+        }
+    }
+
+    // end of the reserved block, or -1 when the row does not exist yet
+    private long reserve(final Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(RESERVE)) {
+            statement.setInt(1, blockSize);
+            statement.setString(2, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : -1;
+            }
+        }
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    private record Range(long next, long end) {
+    }
+
+    private final class SessionBlock implements TransactionObserver {
+
+        private long next;
+
+        private long end;
+
+        private boolean reservedInTransaction;
+
+        @Override
+        public void afterBegin() {
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(final boolean successful, final boolean delayed) {
+            // a reservation rolled back with the transaction, so its ids may be handed out again
+            if (next < end && (successful || !reservedInTransaction)) {
+                pool.add(new Range(next, end));
+            }
+            next = end;
+            reservedInTransaction = false;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package pl.edu.agh.iisg.to.repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterpart of {@link Repository}. Every call runs in its own session and transaction,
+ * so the returned entities are detached and their lazy associations are not initialized.
+ */
+public interface AsyncRepository<T> {
+
+    CompletableFuture<Optional<T>> add(T object);
+
+    CompletableFuture<Optional<T>> getById(int id);
+
+    CompletableFuture<List<T>> findAll();
+
+    CompletableFuture<Void> remove(T object);
+}
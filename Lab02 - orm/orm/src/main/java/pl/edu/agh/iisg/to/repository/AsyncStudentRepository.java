@@ -0,0 +1,102 @@
+package pl.edu.agh.iisg.to.repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import pl.edu.agh.iisg.to.model.Student;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Runs {@link StudentRepository} calls on virtual threads. A virtual thread has no session bound, so each call
+ * opens a short-lived session of its own. At most {@code maxConcurrency} calls run at once, so the callers do not
+ * wait for JDBC connections inside open sessions.
+ */
+public class AsyncStudentRepository implements AsyncRepository<Student>, AutoCloseable {
+
+    // pool size of Hibernate's built-in connection provider when hibernate.connection.pool_size is not set
+    private static final int DEFAULT_CONNECTION_POOL_SIZE = 20;
+
+    private final StudentRepository studentRepository;
+
+    private final Semaphore permits;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public AsyncStudentRepository(final StudentRepository studentRepository, final SessionFactory sessionFactory) {
+        this(studentRepository, connectionBudget(sessionFactory));
+    }
+
+    public AsyncStudentRepository(final StudentRepository studentRepository, final int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency limit must be positive");
+        }
+        this.studentRepository = studentRepository;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    private static int connectionBudget(final SessionFactory sessionFactory) {
+        Object poolSize = sessionFactory.getProperties().get(AvailableSettings.POOL_SIZE);
+        return poolSize == null ? DEFAULT_CONNECTION_POOL_SIZE : Integer.parseInt(poolSize.toString());
+    }
+
+    @Override
+    public CompletableFuture<Optional<Student>> add(final Student student) {
+        return submit(() -> studentRepository.add(student));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Student>> getById(final int id) {
+        return submit(() -> studentRepository.getById(id));
+    }
+
+    @Override
+    public CompletableFuture<List<Student>> findAll() {
+        return submit(studentRepository::findAll);
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(final Student student) {
+        return submit(() -> {
+            studentRepository.remove(student);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Integer> removeAll(final Collection<Integer> indexNumbers) {
+        return submit(() -> studentRepository.removeAll(indexNumbers));
+    }
+
+    public CompletableFuture<List<Student>> findAllByCourseName(final String courseName) {
+        return submit(() -> studentRepository.findAllByCourseName(courseName));
+    }
+
+    private <R> CompletableFuture<R> submit(final Supplier<R> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return task.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    // waits for the submitted calls to finish
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
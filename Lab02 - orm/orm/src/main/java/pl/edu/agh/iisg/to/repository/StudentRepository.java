@@ -1,20 +1,36 @@
 package pl.edu.agh.iisg.to.repository;
 
+import jakarta.persistence.PersistenceUnitUtil;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
 import pl.edu.agh.iisg.to.dao.GradeDao;
 import pl.edu.agh.iisg.to.dao.StudentDao;
 import pl.edu.agh.iisg.to.dao.CourseDao;
 import pl.edu.agh.iisg.to.model.Course;
 import pl.edu.agh.iisg.to.model.Grade;
 import pl.edu.agh.iisg.to.model.Student;
+import pl.edu.agh.iisg.to.session.EntityChange;
+import pl.edu.agh.iisg.to.session.EntityChangeStream;
 import pl.edu.agh.iisg.to.session.TransactionService;
+import pl.edu.agh.iisg.to.stats.CourseStatsChanges;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
 
 public class StudentRepository implements Repository<Student> {
 
+    // keeps IN lists below SQLite's bound parameter limit
+    private static final int REMOVE_CHUNK_SIZE = 500;
+
     private final StudentDao studentDao;
     private final GradeDao gradeDao;
     private final CourseDao courseDao;
@@ -44,25 +60,86 @@ public class StudentRepository implements Repository<Student> {
 
     @Override
     public void remove(final Student student) {
-        transactionService.doAsTransaction(() -> {
-            for (Course course : student.courseSet()) {
-                course.studentSet().remove(student);
+        removeAll(List.of(student.indexNumber()));
+    }
+
+    /**
+     * Removes the students together with their grades and enrollments using set-based statements,
+     * without loading any of them. Returns the number of removed students.
+     */
+    public int removeAll(final Collection<Integer> indexNumbers) {
+        return transactionService.doAsTransaction(() -> {
+            Session session = studentDao.currentSession();
+            List<Integer> indexNumberList = List.copyOf(new HashSet<>(indexNumbers));
+            int removed = 0;
+            for (int from = 0; from < indexNumberList.size(); from += REMOVE_CHUNK_SIZE) {
+                List<Integer> chunk = indexNumberList.subList(from, Math.min(from + REMOVE_CHUNK_SIZE, indexNumberList.size()));
+                List<Integer> studentIds = session.createSelectionQuery(
+                                "SELECT s.id FROM Student s WHERE s.indexNumber IN :indexNumbers", Integer.class)
+                        .setParameter("indexNumbers", chunk)
+                        .getResultList();
+                if (studentIds.isEmpty()) {
+                    continue;
+                }
+                evictFromSession(session, Set.copyOf(studentIds));
+                recordRemovalInCourseStats(session, studentIds);
+                // bulk statements evict the affected second-level cache regions themselves
+                session.createMutationQuery("DELETE FROM Grade g WHERE g.student.id IN :studentIds")
+                        .setParameter("studentIds", studentIds)
+                        .executeUpdate();
+                // deletes the students' rows from the enrollment table first
+                removed += session.createMutationQuery("DELETE FROM Student s WHERE s.id IN :studentIds")
+                        .setParameter("studentIds", studentIds)
+                        .executeUpdate();
+                recordRemovalInChangeStream(session, studentIds);
             }
-            student.courseSet().clear();
+            return removed;
+        }).orElse(0);
+    }
 
-            for (Grade grade : student.gradeSet()) {
-                gradeDao.remove(grade);
+    // bulk statements bypass the persistence context, so the students and grades they delete are detached
+    // up front and dropped from loaded course collections, whose own rows Hibernate deletes on the next flush
+    private static void evictFromSession(final Session session, final Set<Integer> studentIds) {
+        PersistenceUnitUtil util = session.getSessionFactory().getPersistenceUnitUtil();
+        Predicate<Student> removedStudent = student -> studentIds.contains(util.getIdentifier(student));
+        Predicate<Grade> removedGrade = grade -> removedStudent.test(grade.student());
+        var persistenceContext = session.unwrap(SessionImplementor.class).getPersistenceContextInternal();
+        for (Map.Entry<Object, EntityEntry> entry : persistenceContext.reentrantSafeEntityEntries()) {
+            Object entity = entry.getKey();
+            if (entity instanceof Student student && removedStudent.test(student)) {
+                session.detach(student);
+            } else if (entity instanceof Grade grade && removedGrade.test(grade)) {
+                session.detach(grade);
+            } else if (entity instanceof Course course) {
+                prune(course.studentSet(), removedStudent);
+                prune(course.gradeSet(), removedGrade);
             }
-            student.gradeSet().clear();
+        }
+    }
+
+    // the bulk statements bypass the listeners that keep the course statistics, so the enrollments and grades
+    // about to be deleted are subtracted up front, once the pruned rosters were flushed and counted by those listeners
+    private static void recordRemovalInCourseStats(final Session session, final List<Integer> studentIds) {
+        session.flush();
+        session.doWork(connection -> CourseStatsChanges.subtractStudents(connection, studentIds));
+    }
 
-            studentDao.remove(student);
+    // subscribers drop the students' grades and enrollments along with them
+    private static void recordRemovalInChangeStream(final Session session, final List<Integer> studentIds) {
+        EntityChangeStream stream = EntityChangeStream.of(session.getSessionFactory());
+        for (Integer studentId : studentIds) {
+            stream.record(session, new EntityChange(EntityChange.Type.DELETED, Student.class, studentId));
+        }
+    }
 
-            return null;
-        });
+    private static <E> void prune(final Collection<E> collection, final Predicate<E> removed) {
+        if (Hibernate.isInitialized(collection)) {
+            collection.removeIf(removed);
+        }
     }
 
     public List<Student> findAllByCourseName(String courseName) {
-        return transactionService.<List<Student>>doAsTransaction(() -> {
+        return transactionService.<List<Student>>doAsReadOnlyTransaction(() -> {
             Optional<Course> optionalCourse = courseDao.findByName(courseName);
             if (optionalCourse.isEmpty()) {
                 return Collections.<Student>emptyList();
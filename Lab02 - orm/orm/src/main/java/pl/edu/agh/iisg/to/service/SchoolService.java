@@ -1,10 +1,11 @@
 package pl.edu.agh.iisg.to.service;
 
+import org.hibernate.Hibernate;
 import pl.edu.agh.iisg.to.dao.CourseDao;
 import pl.edu.agh.iisg.to.dao.GradeDao;
 import pl.edu.agh.iisg.to.dao.StudentDao;
+import pl.edu.agh.iisg.to.dao.StudentRank;
 import pl.edu.agh.iisg.to.model.Course;
-import pl.edu.agh.iisg.to.model.Grade;
 import pl.edu.agh.iisg.to.model.Student;
 import pl.edu.agh.iisg.to.repository.StudentRepository;
 import pl.edu.agh.iisg.to.session.TransactionService;
@@ -31,67 +32,53 @@ public class SchoolService {
         this.studentRepository = studentRepository;
     }
 
+    // enrollments and grades are retried after an optimistic locking conflict with a concurrent writer
     public boolean enrollStudent(final Course course, final Student student) {
-        return transactionService.doAsTransaction(() -> {
-            if (course.studentSet().contains(student)) {
+        return transactionService.doAsRetryingTransaction(() -> {
+            Course managedCourse = courseDao.managed(course);
+            Student managedStudent = studentDao.managed(student);
+            if (Hibernate.isInitialized(managedCourse.studentSet())) {
+                // the roster is already in memory, so the change goes through the collection
+                if (!managedCourse.studentSet().add(managedStudent)) {
+                    return false;
+                }
+            } else if (!courseDao.enroll(managedCourse, managedStudent)) {
                 return false;
             }
-            course.studentSet().add(student);
-            student.courseSet().add(course);
+            if (Hibernate.isInitialized(managedStudent.courseSet())) {
+                managedStudent.courseSet().add(managedCourse);
+            }
             return true;
         }).orElse(false);
     }
 
     public boolean removeStudent(int indexNumber) {
-        return transactionService.doAsTransaction(() -> {
-            Optional<Student> optionalStudent = studentDao.findByIndexNumber(indexNumber);
-            if (optionalStudent.isEmpty()) {
-                return false;
-            }
-
-            Student student = optionalStudent.get();
-            studentRepository.remove(student);
-            return true;
-        }).orElse(false);
+        return studentRepository.removeAll(List.of(indexNumber)) > 0;
     }
 
     public boolean gradeStudent(final Student student, final Course course, final float gradeValue) {
-        return transactionService.doAsTransaction(() -> {
-            Grade grade = new Grade(student, course, gradeValue);
-            student.gradeSet().add(grade);
-            course.gradeSet().add(grade);
-            gradeDao.save(grade);
-            return true;
-        }).orElse(false);
+        return gradeStudents(course, Map.of(student, gradeValue)) == 1;
     }
 
-    public Map<String, List<Float>> getStudentGrades(String courseName) {
-        Optional<Course> optionalCourse = courseDao.findByName(courseName);
-        if (optionalCourse.isEmpty()) {
-            return Collections.emptyMap();
-        }
-
-        Course course = optionalCourse.get();
-
-        return transactionService.doAsTransaction(() -> {
-            Map<String, List<Float>> report = new HashMap<>();
-
-            List<Student> students = studentRepository.findAllByCourseName(courseName);
+    // returns the number of grades added, 0 when the transaction failed
+    public int gradeStudents(final Course course, final Map<Student, Float> grades) {
+        return transactionService.doAsRetryingTransaction(() -> gradeDao.addGrades(course, grades).size()).orElse(0);
+    }
 
-            for (Student student : students) {
-                List<Float> grades = new ArrayList<>();
+    public Map<String, List<Float>> getStudentGrades(String courseName) {
+        return gradeDao.findGradesByCourseName(courseName);
+    }
 
-                for (Grade grade : student.gradeSet()) {
-                    if (grade.course().equals(course)) {
-                        grades.add(grade.grade());
-                    }
-                }
+    // rankings by average grade, computed by the database instead of from getStudentGrades
+    public Map<String, List<StudentRank>> getTopStudents(final int limit) {
+        return courseDao.findTopStudents(limit);
+    }
 
-                Collections.sort(grades);
-                report.put(student.fullName(), grades);
-            }
+    public List<StudentRank> getTopStudents(final Course course, final int limit) {
+        return courseDao.findTopStudents(course, limit);
+    }
 
-            return report;
-        }).orElse(Collections.emptyMap());
+    public Optional<StudentRank> getStudentRank(final Course course, final Student student) {
+        return courseDao.findRank(course, student);
     }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package pl.edu.agh.iisg.to.session;
+
+import java.time.Duration;
+
+public class BootstrapTimings {
+
+    private final Duration configure;
+
+    private final Duration metadata;
+
+    private final Duration factory;
+
+    private final Duration schema;
+
+    private final boolean schemaSkipped;
+
+    BootstrapTimings(final Duration configure, final Duration metadata, final Duration factory,
+                     final Duration schema, final boolean schemaSkipped) {
+        this.configure = configure;
+        this.metadata = metadata;
+        this.factory = factory;
+        this.schema = schema;
+        this.schemaSkipped = schemaSkipped;
+    }
+
+    public Duration configure() {
+        return configure;
+    }
+
+    public Duration metadata() {
+        return metadata;
+    }
+
+    public Duration factory() {
+        return factory;
+    }
+
+    public Duration schema() {
+        return schema;
+    }
+
+    public boolean schemaSkipped() {
+        return schemaSkipped;
+    }
+
+    public Duration total() {
+        return configure.plus(metadata).plus(factory).plus(schema);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("configure: %d ms, metadata: %d ms, factory: %d ms, schema: %d ms%s, total: %d ms",
+                configure.toMillis(), metadata.toMillis(), factory.toMillis(), schema.toMillis(),
+                schemaSkipped ? " (unchanged, skipped)" : "", total().toMillis());
+    }
+}
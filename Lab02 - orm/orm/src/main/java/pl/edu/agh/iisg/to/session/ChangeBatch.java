@@ -0,0 +1,46 @@
+package pl.edu.agh.iisg.to.session;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The changes committed by one transaction, in the order they were flushed. Batches are numbered consecutively
+ * per session factory, so a subscriber that sees a gap in the sequence knows it missed a batch and can fall
+ * back to invalidating everything.
+ */
+public class ChangeBatch {
+
+    private final long sequence;
+
+    private final List<EntityChange> changes;
+
+    ChangeBatch(final long sequence, final List<EntityChange> changes) {
+        this.sequence = sequence;
+        this.changes = List.copyOf(changes);
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public List<EntityChange> changes() {
+        return changes;
+    }
+
+    // ids of the changed entities of the class, whatever the change
+    public Set<Object> ids(final Class<?> entityClass) {
+        Set<Object> ids = new LinkedHashSet<>();
+        for (EntityChange change : changes) {
+            if (change.entityClass() == entityClass) {
+                ids.add(change.id());
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + changes;
+    }
+}
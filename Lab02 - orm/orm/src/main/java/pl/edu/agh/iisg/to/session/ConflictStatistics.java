@@ -0,0 +1,63 @@
+package pl.edu.agh.iisg.to.session;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// optimistic locking conflicts of the transactions run by SessionService.doAsRetryingTransaction
+public class ConflictStatistics {
+
+    private final LongAdder transactions = new LongAdder();
+
+    private final LongAdder attempts = new LongAdder();
+
+    private final LongAdder conflicts = new LongAdder();
+
+    private final LongAdder exhausted = new LongAdder();
+
+    ConflictStatistics() {
+    }
+
+    void transactionStarted() {
+        transactions.increment();
+    }
+
+    void attempted() {
+        attempts.increment();
+    }
+
+    void conflicted() {
+        conflicts.increment();
+    }
+
+    void retriesExhausted() {
+        exhausted.increment();
+    }
+
+    public long transactions() {
+        return transactions.sum();
+    }
+
+    public long attempts() {
+        return attempts.sum();
+    }
+
+    public long conflicts() {
+        return conflicts.sum();
+    }
+
+    // transactions given up after their last attempt also conflicted
+    public long exhausted() {
+        return exhausted.sum();
+    }
+
+    // share of attempts that ended in a conflict
+    public double conflictRate() {
+        long attempted = attempts();
+        return attempted == 0 ? 0 : (double) conflicts() / attempted;
+    }
+
+    @Override
+    public String toString() {
+        return "transactions=" + transactions() + ", attempts=" + attempts() + ", conflicts=" + conflicts()
+                + ", exhausted=" + exhausted() + ", conflict rate=" + String.format("%.3f", conflictRate());
+    }
+}
@@ -0,0 +1,55 @@
+package pl.edu.agh.iisg.to.session;
+
+import java.util.Objects;
+
+// a committed insert, update or delete of a streamed entity, identified by its class and id
+public class EntityChange {
+
+    public enum Type {
+        INSERTED,
+        UPDATED,
+        DELETED
+    }
+
+    private final Type type;
+
+    private final Class<?> entityClass;
+
+    private final Object id;
+
+    public EntityChange(final Type type, final Class<?> entityClass, final Object id) {
+        this.type = Objects.requireNonNull(type);
+        this.entityClass = Objects.requireNonNull(entityClass);
+        this.id = Objects.requireNonNull(id);
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public Class<?> entityClass() {
+        return entityClass;
+    }
+
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EntityChange that = (EntityChange) o;
+        return type == that.type && entityClass.equals(that.entityClass) && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, entityClass, id);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + entityClass.getSimpleName() + "#" + id;
+    }
+}
@@ -0,0 +1,29 @@
+package pl.edu.agh.iisg.to.session;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+// registered in META-INF/services, opens the change stream of every factory and closes it with the factory
+public class EntityChangeIntegrator implements Integrator {
+
+    @Override
+    public void integrate(final Metadata metadata, final BootstrapContext bootstrapContext,
+                          final SessionFactoryImplementor sessionFactory) {
+        EntityChangeListener listener = new EntityChangeListener(EntityChangeStream.open(sessionFactory));
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().requireService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+
+    @Override
+    public void disintegrate(final SessionFactoryImplementor sessionFactory,
+                             final SessionFactoryServiceRegistry serviceRegistry) {
+        EntityChangeStream.close(sessionFactory);
+    }
+}
@@ -0,0 +1,68 @@
+package pl.edu.agh.iisg.to.session;
+
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.Grade;
+import pl.edu.agh.iisg.to.model.Student;
+
+import java.util.Set;
+
+// reports the committed changes of students, courses and grades to the session's transaction in the stream
+public class EntityChangeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+
+    private static final Set<Class<?>> STREAMED = Set.of(Student.class, Course.class, Grade.class);
+
+    private final EntityChangeStream stream;
+
+    EntityChangeListener(final EntityChangeStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void onPostInsert(final PostInsertEvent event) {
+        record(event.getSession(), EntityChange.Type.INSERTED, event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(final PostUpdateEvent event) {
+        record(event.getSession(), EntityChange.Type.UPDATED, event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(final PostDeleteEvent event) {
+        record(event.getSession(), EntityChange.Type.DELETED, event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(final PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(final PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(final PostDeleteEvent event) {
+    }
+
+    // the other entities are not queued for post-commit handling at all
+    @Override
+    public boolean requiresPostCommitHandling(final EntityPersister persister) {
+        return STREAMED.contains(persister.getMappedClass());
+    }
+
+    private void record(final EventSource session, final EntityChange.Type type, final EntityPersister persister,
+                        final Object id) {
+        if (session != null) {
+            stream.record(session, new EntityChange(type, persister.getMappedClass(), id));
+        }
+    }
+}
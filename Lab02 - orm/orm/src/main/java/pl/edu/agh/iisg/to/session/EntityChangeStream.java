@@ -0,0 +1,145 @@
+package pl.edu.agh.iisg.to.session;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.resource.transaction.spi.TransactionObserver;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes the changes of every committed transaction of a session factory as one {@link ChangeBatch}.
+ * The changes are reported by {@link EntityChangeListener} after the commit and collected per session,
+ * a rolled back transaction publishes nothing. Bulk statements reach no listener, so code issuing them
+ * records their changes with {@link #record}.
+ * <p>
+ * Every subscriber has a buffer of {@link #BUFFER_CAPACITY} batches and receives them on a virtual thread as it
+ * requests them. When a buffer is full the committing thread waits up to {@link #OFFER_TIMEOUT} for the
+ * subscriber to catch up, then the batch is dropped for that subscriber, which sees a gap in the sequence.
+ */
+public class EntityChangeStream implements AutoCloseable {
+
+    public static final int BUFFER_CAPACITY = 256;
+
+    public static final Duration OFFER_TIMEOUT = Duration.ofMillis(100);
+
+    private static final Map<SessionFactory, EntityChangeStream> streams = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final SubmissionPublisher<ChangeBatch> publisher = new SubmissionPublisher<>(executor, BUFFER_CAPACITY);
+
+    private final Map<SharedSessionContractImplementor, TransactionChanges> transactions =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private long nextSequence = 1;
+
+    private EntityChangeStream() {
+    }
+
+    static EntityChangeStream open(final SessionFactory sessionFactory) {
+        return streams.computeIfAbsent(sessionFactory, f -> new EntityChangeStream());
+    }
+
+    static void close(final SessionFactory sessionFactory) {
+        EntityChangeStream stream = streams.remove(sessionFactory);
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    public static EntityChangeStream of(final SessionFactory sessionFactory) {
+        EntityChangeStream stream = streams.get(sessionFactory);
+        if (stream == null) {
+            throw new IllegalStateException("No change stream for the session factory, is it closed?");
+        }
+        return stream;
+    }
+
+    public void subscribe(final Flow.Subscriber<? super ChangeBatch> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    // adds a change to the current transaction of the session, published only if it commits
+    public void record(final Session session, final EntityChange change) {
+        transactions.computeIfAbsent(session.unwrap(SharedSessionContractImplementor.class), s -> {
+            TransactionChanges created = new TransactionChanges();
+            s.getTransactionCoordinator().addObserver(created);
+            return created;
+        }).changes.add(change);
+    }
+
+    public int subscribers() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    public long publishedBatches() {
+        return published.sum();
+    }
+
+    // batches dropped for a subscriber whose buffer stayed full, counted once per subscriber
+    public long droppedBatches() {
+        return dropped.sum();
+    }
+
+    // sequence numbers are handed out in the order the batches are offered
+    private synchronized void publish(final List<EntityChange> changes) {
+        if (publisher.isClosed()) {
+            return;
+        }
+        publisher.offer(new ChangeBatch(nextSequence++, changes), OFFER_TIMEOUT.toNanos(), TimeUnit.NANOSECONDS,
+                (subscriber, batch) -> {
+                    dropped.increment();
+                    return false;
+                });
+        published.increment();
+    }
+
+    // subscribers receive onComplete after the batches already buffered for them
+    @Override
+    public void close() {
+        publisher.close();
+        executor.close();
+    }
+
+    // notified after the session has run the post-commit listeners of the transaction
+    private final class TransactionChanges implements TransactionObserver {
+
+        private final List<EntityChange> changes = new ArrayList<>();
+
+        @Override
+        public void afterBegin() {
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(final boolean successful, final boolean delayed) {
+            try {
+                if (successful && !changes.isEmpty()) {
+                    publish(changes);
+                }
+            } finally {
+                changes.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package pl.edu.agh.iisg.to.session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Statements, loads, second-level cache accesses and flushes issued by the current thread between
+ * {@link #start()} and {@link #stop()}. The events are reported by {@link RecordingStatistics}, installed
+ * through the hibernate.stats.factory setting, and require hibernate.generate_statistics.
+ */
+public class OperationStatistics {
+
+    private static final ThreadLocal<List<OperationStatistics>> active = new ThreadLocal<>();
+
+    private long statements;
+
+    private long queries;
+
+    private long entityLoads;
+
+    private long entityFetches;
+
+    private long collectionLoads;
+
+    private long collectionFetches;
+
+    private long cacheHits;
+
+    private long cacheMisses;
+
+    private long flushes;
+
+    // lazy initializations per entity name or collection role
+    private final Map<String, Long> fetches = new HashMap<>();
+
+    OperationStatistics() {
+    }
+
+    public static OperationStatistics start() {
+        List<OperationStatistics> recordings = active.get();
+        if (recordings == null) {
+            recordings = new ArrayList<>();
+            active.set(recordings);
+        }
+        OperationStatistics statistics = new OperationStatistics();
+        recordings.add(statistics);
+        return statistics;
+    }
+
+    public void stop() {
+        List<OperationStatistics> recordings = active.get();
+        if (recordings != null) {
+            recordings.remove(this);
+            if (recordings.isEmpty()) {
+                active.remove();
+            }
+        }
+    }
+
+    static void record(final Consumer<OperationStatistics> event) {
+        List<OperationStatistics> recordings = active.get();
+        if (recordings != null) {
+            recordings.forEach(event);
+        }
+    }
+
+    void statementPrepared() {
+        statements++;
+    }
+
+    void queryExecuted() {
+        queries++;
+    }
+
+    void entityLoaded() {
+        entityLoads++;
+    }
+
+    void entityFetched(final String entityName) {
+        entityFetches++;
+        fetches.merge(entityName, 1L, Long::sum);
+    }
+
+    void collectionLoaded() {
+        collectionLoads++;
+    }
+
+    void collectionFetched(final String role) {
+        collectionFetches++;
+        fetches.merge(role, 1L, Long::sum);
+    }
+
+    void cacheHit() {
+        cacheHits++;
+    }
+
+    void cacheMissed() {
+        cacheMisses++;
+    }
+
+    void flushed() {
+        flushes++;
+    }
+
+    public long statements() {
+        return statements;
+    }
+
+    public long queries() {
+        return queries;
+    }
+
+    public long entityLoads() {
+        return entityLoads;
+    }
+
+    // entities loaded on access to an uninitialized proxy or lazy to-one association
+    public long entityFetches() {
+        return entityFetches;
+    }
+
+    public long collectionLoads() {
+        return collectionLoads;
+    }
+
+    // collections loaded on first access to a lazy collection
+    public long collectionFetches() {
+        return collectionFetches;
+    }
+
+    public long secondLevelCacheHits() {
+        return cacheHits;
+    }
+
+    public long secondLevelCacheMisses() {
+        return cacheMisses;
+    }
+
+    public long flushes() {
+        return flushes;
+    }
+
+    /**
+     * Entity names and collection roles initialized lazily at least {@code threshold} times, i.e. one
+     * statement per parent object instead of one for all of them.
+     */
+    public Map<String, Long> nPlusOneSuspects(final int threshold) {
+        Map<String, Long> suspects = new TreeMap<>();
+        fetches.forEach((role, count) -> {
+            if (count >= threshold) {
+                suspects.put(role, count);
+            }
+        });
+        return suspects;
+    }
+
+    @Override
+    public String toString() {
+        return "statements=" + statements + ", queries=" + queries
+                + ", entityLoads=" + entityLoads + ", entityFetches=" + entityFetches
+                + ", collectionLoads=" + collectionLoads + ", collectionFetches=" + collectionFetches
+                + ", cacheHits=" + cacheHits + ", cacheMisses=" + cacheMisses + ", flushes=" + flushes;
+    }
+}
@@ -0,0 +1,99 @@
+package pl.edu.agh.iisg.to.session;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.model.domain.NavigableRole;
+import org.hibernate.stat.internal.StatisticsImpl;
+
+// factory-wide statistics that also report each event to the operations recorded on the current thread
+public class RecordingStatistics extends StatisticsImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    public RecordingStatistics(final SessionFactoryImplementor sessionFactory) {
+        super(sessionFactory);
+    }
+
+    @Override
+    public void prepareStatement() {
+        super.prepareStatement();
+        OperationStatistics.record(OperationStatistics::statementPrepared);
+    }
+
+    @Override
+    public void queryExecuted(final String hql, final int rows, final long time) {
+        super.queryExecuted(hql, rows, time);
+        OperationStatistics.record(OperationStatistics::queryExecuted);
+    }
+
+    @Override
+    public void naturalIdQueryExecuted(final String rootEntityName, final long time) {
+        super.naturalIdQueryExecuted(rootEntityName, time);
+        OperationStatistics.record(OperationStatistics::queryExecuted);
+    }
+
+    @Override
+    public void loadEntity(final String entityName) {
+        super.loadEntity(entityName);
+        OperationStatistics.record(OperationStatistics::entityLoaded);
+    }
+
+    @Override
+    public void fetchEntity(final String entityName) {
+        super.fetchEntity(entityName);
+        OperationStatistics.record(statistics -> statistics.entityFetched(entityName));
+    }
+
+    @Override
+    public void loadCollection(final String role) {
+        super.loadCollection(role);
+        OperationStatistics.record(OperationStatistics::collectionLoaded);
+    }
+
+    @Override
+    public void fetchCollection(final String role) {
+        super.fetchCollection(role);
+        OperationStatistics.record(statistics -> statistics.collectionFetched(role));
+    }
+
+    @Override
+    public void entityCacheHit(final NavigableRole entityName, final String regionName) {
+        super.entityCacheHit(entityName, regionName);
+        OperationStatistics.record(OperationStatistics::cacheHit);
+    }
+
+    @Override
+    public void entityCacheMiss(final NavigableRole entityName, final String regionName) {
+        super.entityCacheMiss(entityName, regionName);
+        OperationStatistics.record(OperationStatistics::cacheMissed);
+    }
+
+    @Override
+    public void collectionCacheHit(final NavigableRole collectionRole, final String regionName) {
+        super.collectionCacheHit(collectionRole, regionName);
+        OperationStatistics.record(OperationStatistics::cacheHit);
+    }
+
+    @Override
+    public void collectionCacheMiss(final NavigableRole collectionRole, final String regionName) {
+        super.collectionCacheMiss(collectionRole, regionName);
+        OperationStatistics.record(OperationStatistics::cacheMissed);
+    }
+
+    @Override
+    public void naturalIdCacheHit(final NavigableRole rootEntityName, final String regionName) {
+        super.naturalIdCacheHit(rootEntityName, regionName);
+        OperationStatistics.record(OperationStatistics::cacheHit);
+    }
+
+    @Override
+    public void naturalIdCacheMiss(final NavigableRole rootEntityName, final String regionName) {
+        super.naturalIdCacheMiss(rootEntityName, regionName);
+        OperationStatistics.record(OperationStatistics::cacheMissed);
+    }
+
+    @Override
+    public void flush() {
+        super.flush();
+        OperationStatistics.record(OperationStatistics::flushed);
+    }
+}
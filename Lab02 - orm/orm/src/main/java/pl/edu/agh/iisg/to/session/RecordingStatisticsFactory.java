@@ -0,0 +1,14 @@
+package pl.edu.agh.iisg.to.session;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.spi.StatisticsFactory;
+import org.hibernate.stat.spi.StatisticsImplementor;
+
+// configured as hibernate.stats.factory
+public class RecordingStatisticsFactory implements StatisticsFactory {
+
+    @Override
+    public StatisticsImplementor buildStatistics(final SessionFactoryImplementor sessionFactory) {
+        return new RecordingStatistics(sessionFactory);
+    }
+}
@@ -0,0 +1,226 @@
+package pl.edu.agh.iisg.to.session;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.ForeignKey;
+import org.hibernate.mapping.Index;
+import org.hibernate.mapping.Selectable;
+import org.hibernate.mapping.Table;
+import org.hibernate.mapping.UniqueKey;
+import org.hibernate.tool.schema.spi.DelayedDropAction;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide holder of the {@link SessionFactory}, built lazily on first use.
+ * The bootstrap is split into timed phases, see {@link #bootstrapTimings()}.
+ */
+public final class SessionFactoryProvider {
+
+    // property names from hibernate.cfg.xml are prefixed with "hibernate." when loaded
+    public static final String SKIP_UNCHANGED_SCHEMA = "hibernate.to.skip_unchanged_schema";
+
+    private static final String FINGERPRINT_TABLE = "schema_fingerprint";
+
+    private static final Logger logger = Logger.getGlobal();
+
+    private static final List<DelayedDropAction> delayedDropActions = new ArrayList<>();
+
+    private static volatile SessionFactory sessionFactory;
+
+    private static StandardServiceRegistry serviceRegistry;
+
+    private static BootstrapTimings bootstrapTimings;
+
+    private SessionFactoryProvider() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static SessionFactory getSessionFactory() {
+        SessionFactory result = sessionFactory;
+        if (result == null) {
+            synchronized (SessionFactoryProvider.class) {
+                result = sessionFactory;
+                if (result == null) {
+                    result = build();
+                    sessionFactory = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static synchronized BootstrapTimings bootstrapTimings() {
+        getSessionFactory();
+        return bootstrapTimings;
+    }
+
+    public static synchronized void close() {
+        if (sessionFactory == null) {
+            return;
+        }
+        for (DelayedDropAction action : delayedDropActions) {
+            action.perform(serviceRegistry);
+        }
+        delayedDropActions.clear();
+        sessionFactory.close();
+        sessionFactory = null;
+        serviceRegistry = null;
+    }
+
+    private static SessionFactory build() {
+        long start = System.nanoTime();
+        StandardServiceRegistryBuilder registryBuilder = new StandardServiceRegistryBuilder()
+                .configure(); // configures settings from hibernate.cfg.xml
+        Map<String, Object> settings = new HashMap<>(registryBuilder.getSettings());
+        // schema management is run as a separate phase once the factory is built
+        registryBuilder.applySetting(AvailableSettings.HBM2DDL_AUTO, "none");
+        serviceRegistry = registryBuilder.build();
+        long configured = System.nanoTime();
+
+        try {
+            Metadata metadata = new MetadataSources(serviceRegistry).buildMetadata();
+            long metadataBuilt = System.nanoTime();
+
+            SessionFactory factory = metadata.buildSessionFactory();
+            long factoryBuilt = System.nanoTime();
+
+            boolean schemaSkipped = processSchema(metadata, settings);
+            long schemaProcessed = System.nanoTime();
+
+            bootstrapTimings = new BootstrapTimings(
+                    Duration.ofNanos(configured - start),
+                    Duration.ofNanos(metadataBuilt - configured),
+                    Duration.ofNanos(factoryBuilt - metadataBuilt),
+                    Duration.ofNanos(schemaProcessed - factoryBuilt),
+                    schemaSkipped);
+            logger.info("SessionFactory built, " + bootstrapTimings);
+            return factory;
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(serviceRegistry);
+            serviceRegistry = null;
+            throw e;
+        }
+    }
+
+    private static boolean processSchema(final Metadata metadata, final Map<String, Object> settings) {
+        String action = String.valueOf(settings.getOrDefault(AvailableSettings.HBM2DDL_AUTO, "none"));
+        boolean incremental = "update".equals(action) || "validate".equals(action);
+        if (!incremental || !Boolean.parseBoolean(String.valueOf(settings.get(SKIP_UNCHANGED_SCHEMA)))) {
+            SchemaManagementToolCoordinator.process(metadata, serviceRegistry, settings, delayedDropActions::add);
+            return false;
+        }
+
+        // update and validate only inspect the database, which is pointless when the mapping did not change
+        String fingerprint = fingerprint(metadata);
+        if (fingerprint.equals(readFingerprint())) {
+            return true;
+        }
+        SchemaManagementToolCoordinator.process(metadata, serviceRegistry, settings, delayedDropActions::add);
+        writeFingerprint(fingerprint);
+        return false;
+    }
+
+    // everything of the mapping that update would write to the database: columns, indexes and constraints
+    private static String fingerprint(final Metadata metadata) {
+        List<Table> tables = new ArrayList<>(metadata.collectTableMappings());
+        tables.sort(Comparator.comparing(Table::getName));
+
+        StringBuilder mapping = new StringBuilder();
+        for (Table table : tables) {
+            mapping.append(table.getName()).append('(');
+            for (Column column : table.getColumns()) {
+                mapping.append(column.getName()).append(' ')
+                        .append(column.getSqlType(metadata)).append(' ')
+                        .append(column.getLength()).append(' ')
+                        .append(column.isNullable()).append(' ')
+                        .append(column.isUnique()).append(',');
+            }
+            List<String> keys = new ArrayList<>();
+            for (Index index : table.getIndexes().values()) {
+                keys.add("index " + index.getName() + (index.isUnique() ? " unique " : " ") + columnNames(index.getSelectables()));
+            }
+            for (UniqueKey uniqueKey : table.getUniqueKeys().values()) {
+                keys.add("unique " + uniqueKey.getName() + " " + columnNames(uniqueKey.getColumns()));
+            }
+            for (ForeignKey foreignKey : table.getForeignKeys().values()) {
+                keys.add("foreign " + foreignKey.getName() + " " + columnNames(foreignKey.getColumns()) + " "
+                        + foreignKey.getReferencedTable().getName() + columnNames(foreignKey.getReferencedColumns()));
+            }
+            Collections.sort(keys);
+            mapping.append(String.join(",", keys)).append(')');
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(mapping.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String columnNames(final List<? extends Selectable> columns) {
+        return columns.stream().map(Selectable::getText).toList().toString();
+    }
+
+    private static String readFingerprint() {
+        ConnectionProvider connectionProvider = serviceRegistry.getService(ConnectionProvider.class);
+        try {
+            Connection connection = connectionProvider.getConnection();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT fingerprint FROM " + FINGERPRINT_TABLE)) {
+                return rs.next() ? rs.getString(1) : null;
+            } finally {
+                connectionProvider.closeConnection(connection);
+            }
+        } catch (SQLException e) {
+            // no fingerprint table yet
+            return null;
+        }
+    }
+
+    private static void writeFingerprint(final String fingerprint) {
+        ConnectionProvider connectionProvider = serviceRegistry.getService(ConnectionProvider.class);
+        try {
+            Connection connection = connectionProvider.getConnection();
+            try (Statement statement = connection.createStatement();
+                 PreparedStatement insert = connection.prepareStatement(
+                         "INSERT INTO " + FINGERPRINT_TABLE + " (fingerprint) VALUES (?)")) {
+                statement.execute("CREATE TABLE IF NOT EXISTS " + FINGERPRINT_TABLE + " (fingerprint VARCHAR(64) NOT NULL)");
+                statement.execute("DELETE FROM " + FINGERPRINT_TABLE);
+                insert.setString(1, fingerprint);
+                insert.execute();
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+            } finally {
+                connectionProvider.closeConnection(connection);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
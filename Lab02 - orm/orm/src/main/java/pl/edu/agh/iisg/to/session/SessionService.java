@@ -1,53 +1,293 @@
 package pl.edu.agh.iisg.to.session;
 
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.FlushMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.hibernate.Transaction;
-import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.stat.Statistics;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Supplier;
 
+/**
+ * Sessions are bound to the current (platform or virtual) thread. When no session is bound,
+ * {@link #doAsTransaction(Supplier)} opens one for the duration of the unit of work.
+ */
 public class SessionService implements TransactionService {
 
-    private final SessionFactory sessionFactory =
-            new Configuration().configure() // configures settings from hibernate.cfg.xml
-                    .buildSessionFactory();
+    private final SessionFactory sessionFactory;
 
-    private Session session;
+    private final ThreadLocal<Session> boundSession = new ThreadLocal<>();
+
+    private final ThreadLocal<OperationStatistics> lastTransactionStatistics = new ThreadLocal<>();
+
+    private final ConflictStatistics conflictStatistics = new ConflictStatistics();
+
+    public SessionService() {
+        this(SessionFactoryProvider.getSessionFactory());
+    }
+
+    public SessionService(final SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
 
     public void openSession() {
-        session = sessionFactory.openSession();
+        if (hasSession()) {
+            throw new IllegalStateException("A session is already bound to the current thread");
+        }
+        boundSession.set(sessionFactory.openSession());
+    }
+
+    public boolean hasSession() {
+        return boundSession.get() != null;
     }
 
     public Session getSession() {
+        Session session = boundSession.get();
+        if (session == null) {
+            throw new IllegalStateException("No session is bound to the current thread");
+        }
         return session;
     }
 
     public void closeSession() {
-        session.close();
+        Session session = boundSession.get();
+        if (session != null) {
+            boundSession.remove();
+            session.close();
+        }
     }
 
     public void clearSessionObjects() {
-        session.clear();
+        getSession().clear();
+    }
+
+    public SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    // query, entity and second-level cache statistics, enabled by hibernate.generate_statistics
+    public Statistics getStatistics() {
+        return sessionFactory.getStatistics();
+    }
+
+    // statistics of the last transaction started by doAsTransaction on the current thread
+    public Optional<OperationStatistics> lastTransactionStatistics() {
+        return Optional.ofNullable(lastTransactionStatistics.get());
+    }
+
+    public ConflictStatistics getConflictStatistics() {
+        return conflictStatistics;
+    }
+
+    public EntityChangeStream getChangeStream() {
+        return EntityChangeStream.of(sessionFactory);
     }
 
     public <T> Optional<T> doAsTransaction(Supplier<T> task) {
+        return doAsTransaction(task, false);
+    }
+
+    /**
+     * Runs the task in a transaction, and runs it again in a new one when it fails with an optimistic locking
+     * conflict, after the backoff of the policy. Before a retry the state of the failed attempt is discarded:
+     * a session opened for the attempt is closed, a bound session is cleared, so the task has to load the
+     * entities it changes again, as the DAOs do through {@code GenericDao.managed}. Inside an already active
+     * transaction the task simply joins it and a conflict fails the enclosing transaction.
+     */
+    @Override
+    public <T> Optional<T> doAsRetryingTransaction(RetryPolicy policy, Supplier<T> task) {
+        if (hasSession() && getSession().getTransaction().isActive()) {
+            return Optional.ofNullable(task.get());
+        }
+        conflictStatistics.transactionStarted();
+        for (int attempt = 1; ; attempt++) {
+            conflictStatistics.attempted();
+            boolean sessionPerAttempt = !hasSession();
+            if (sessionPerAttempt) {
+                openSession();
+            }
+            Session session = getSession();
+            try {
+                return Optional.ofNullable(runInTransaction(session, task, false));
+            } catch (RuntimeException e) {
+                if (!isOptimisticLockFailure(e)) {
+                    e.printStackTrace();
+                    return Optional.empty();
+                }
+                conflictStatistics.conflicted();
+                if (attempt == policy.maxAttempts()) {
+                    conflictStatistics.retriesExhausted();
+                    e.printStackTrace();
+                    return Optional.empty();
+                }
+                if (!sessionPerAttempt) {
+                    session.clear();
+                }
+            } finally {
+                if (sessionPerAttempt) {
+                    closeSession();
+                }
+            }
+            try {
+                Thread.sleep(policy.backoff(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            }
+        }
+    }
+
+    private static boolean isOptimisticLockFailure(final Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StaleStateException || cause instanceof OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the task in a transaction in which the session loads entities read-only, so no snapshots are kept
+     * for dirty checking, and is never flushed. Inside an already active transaction the task simply joins it.
+     * A bound session outlives the call, so the entities loaded into it, and the lazy proxies of their
+     * associations, are made writable again when the transaction ends.
+     */
+    public <T> Optional<T> doAsReadOnlyTransaction(Supplier<T> task) {
+        return doAsTransaction(task, true);
+    }
+
+    private <T> Optional<T> doAsTransaction(Supplier<T> task, boolean readOnly) {
+        if (hasSession()) {
+            Session session = getSession();
+            if (!readOnly || session.getTransaction().isActive()) {
+                return doInTransaction(session, task, readOnly);
+            }
+            Set<Object> readOnlyBefore = readOnlyEntities(session);
+            try {
+                return doInTransaction(session, task, true);
+            } finally {
+                makeLoadedEntitiesWritable(session, readOnlyBefore);
+            }
+        }
+        // session per unit of work
+        openSession();
+        try {
+            return doInTransaction(getSession(), task, readOnly);
+        } finally {
+            closeSession();
+        }
+    }
+
+    // entities made read-only before the call keep their setting
+    private static Set<Object> readOnlyEntities(final Session session) {
+        Set<Object> entities = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<Object, EntityEntry> entry : persistenceEntries(session)) {
+            if (entry.getValue().isReadOnly()) {
+                entities.add(entry.getKey());
+            }
+        }
+        return entities;
+    }
+
+    // entities built without enhancement reference lazy associations through proxies, and an uninitialized proxy
+    // created read-only would load its entity read-only later, so those are reset too
+    private static void makeLoadedEntitiesWritable(final Session session, final Set<Object> readOnlyBefore) {
+        if (!session.isOpen()) {
+            return;
+        }
+        SessionImplementor sessionImplementor = session.unwrap(SessionImplementor.class);
+        for (Map.Entry<Object, EntityEntry> entry : persistenceEntries(session)) {
+            Object entity = entry.getKey();
+            EntityEntry entityEntry = entry.getValue();
+            if (!entityEntry.isReadOnly() || !entityEntry.getPersister().isMutable() || readOnlyBefore.contains(entity)) {
+                continue;
+            }
+            for (Object value : entityEntry.getPersister().getValues(entity)) {
+                if (value instanceof HibernateProxy proxy && isReadOnlyMutableProxy(sessionImplementor, proxy)) {
+                    session.setReadOnly(proxy, false);
+                }
+            }
+            session.setReadOnly(entity, false);
+        }
+    }
+
+    private static boolean isReadOnlyMutableProxy(final SessionImplementor session, final HibernateProxy proxy) {
+        LazyInitializer lazyInitializer = proxy.getHibernateLazyInitializer();
+        return lazyInitializer.isUninitialized()
+                && lazyInitializer.getSession() == session
+                && lazyInitializer.isReadOnly()
+                && session.getFactory().getMappingMetamodel().getEntityDescriptor(lazyInitializer.getEntityName()).isMutable();
+    }
+
+    private static Map.Entry<Object, EntityEntry>[] persistenceEntries(final Session session) {
+        return session.unwrap(SessionImplementor.class).getPersistenceContextInternal().reentrantSafeEntityEntries();
+    }
+
+    public <T> Optional<T> doAsTransaction(Session session, Supplier<T> task) {
+        Session previous = boundSession.get();
+        boundSession.set(session);
+        try {
+            return doInTransaction(session, task, false);
+        } finally {
+            if (previous == null) {
+                boundSession.remove();
+            } else {
+                boundSession.set(previous);
+            }
+        }
+    }
+
+    private <T> Optional<T> doInTransaction(Session session, Supplier<T> task, boolean readOnly) {
         if (session.getTransaction().isActive()) {
             return Optional.ofNullable(task.get());
         }
+        try {
+            return Optional.ofNullable(runInTransaction(session, task, readOnly));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    // rolls the transaction back and rethrows when the task or the commit fails
+    private <T> T runInTransaction(Session session, Supplier<T> task, boolean readOnly) {
+        if (session.getTransaction().isActive()) {
+            return task.get();
+        }
+        boolean defaultReadOnly = session.isDefaultReadOnly();
+        FlushMode flushMode = session.getHibernateFlushMode();
+        if (readOnly) {
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+        }
         Transaction transaction = null;
+        OperationStatistics statistics = OperationStatistics.start();
         try {
             transaction = session.beginTransaction();
             T result = task.get();
             transaction.commit();
-            return Optional.ofNullable(result);
-        } catch (Exception e) {
-            e.printStackTrace();
+            return result;
+        } catch (RuntimeException e) {
             if (transaction != null) {
                 transaction.rollback();
             }
+            throw e;
+        } finally {
+            statistics.stop();
+            lastTransactionStatistics.set(statistics);
+            session.setDefaultReadOnly(defaultReadOnly);
+            session.setHibernateFlushMode(flushMode);
         }
-        return Optional.empty();
     }
 }
@@ -6,4 +6,14 @@ import java.util.function.Supplier;
 public interface TransactionService {
 
     <T> Optional<T> doAsTransaction(Supplier<T> task);
+
+    // for report-style reads, loaded entities are not dirty-checked and nothing is flushed
+    <T> Optional<T> doAsReadOnlyTransaction(Supplier<T> task);
+
+    // runs the task again in a new transaction after an optimistic locking conflict
+    <T> Optional<T> doAsRetryingTransaction(RetryPolicy policy, Supplier<T> task);
+
+    default <T> Optional<T> doAsRetryingTransaction(Supplier<T> task) {
+        return doAsRetryingTransaction(RetryPolicy.DEFAULT, task);
+    }
 }
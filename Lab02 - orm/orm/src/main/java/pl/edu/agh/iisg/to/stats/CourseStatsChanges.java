@@ -0,0 +1,230 @@
+package pl.edu.agh.iisg.to.stats;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.resource.transaction.spi.TransactionObserver;
+import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.CourseStats;
+import pl.edu.agh.iisg.to.model.Grade;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Changes to the {@link CourseStats} rows made by the current transaction of a session. They are collected while
+ * the session flushes and written on the session's connection right before the transaction commits, as one
+ * update per changed course. A course without a row, or whose change is not known as a delta, is recounted
+ * from the enrollment and grade tables instead.
+ */
+public final class CourseStatsChanges implements TransactionObserver {
+
+    private static final String ENROLLMENT = Course.ENROLLMENT_TABLE_NAME;
+
+    private static final String STATS = CourseStats.TABLE_NAME;
+
+    // current totals of every course, computed from the enrollment and grade tables
+    private static final String COUNTED = "SELECT c." + Course.Columns.ID + " AS " + CourseStats.Columns.COURSE_ID
+            + ", c." + Course.Columns.NAME + " AS " + CourseStats.Columns.COURSE_NAME + ", "
+            + "(SELECT COUNT(*) FROM " + ENROLLMENT + " e WHERE e." + Course.EnrollmentColumns.COURSE_ID + " = c."
+            + Course.Columns.ID + ") AS " + CourseStats.Columns.ENROLLED_COUNT + ", "
+            + "(SELECT COUNT(*) FROM " + Grade.TABLE_NAME + " g WHERE g." + Grade.Columns.COURSE_ID + " = c."
+            + Course.Columns.ID + ") AS " + CourseStats.Columns.GRADE_COUNT + ", "
+            + "(SELECT COALESCE(SUM(g." + Grade.Columns.GRADE + "), 0) FROM " + Grade.TABLE_NAME + " g WHERE g."
+            + Grade.Columns.COURSE_ID + " = c." + Course.Columns.ID + ") AS " + CourseStats.Columns.GRADE_SUM + " "
+            + "FROM " + Course.TABLE_NAME + " c";
+
+    private static final String INSERT = "INSERT INTO " + STATS + " (" + CourseStats.Columns.COURSE_ID + ", "
+            + CourseStats.Columns.COURSE_NAME + ", " + CourseStats.Columns.ENROLLED_COUNT + ", "
+            + CourseStats.Columns.GRADE_COUNT + ", " + CourseStats.Columns.GRADE_SUM + ") ";
+
+    private static final String INSERT_COUNTED = INSERT + COUNTED + " WHERE c." + Course.Columns.ID + " = ?";
+
+    private static final String UPDATE = "UPDATE " + STATS + " SET "
+            + CourseStats.Columns.ENROLLED_COUNT + " = " + CourseStats.Columns.ENROLLED_COUNT + " + ?, "
+            + CourseStats.Columns.GRADE_COUNT + " = " + CourseStats.Columns.GRADE_COUNT + " + ?, "
+            + CourseStats.Columns.GRADE_SUM + " = " + CourseStats.Columns.GRADE_SUM + " + ? "
+            + "WHERE " + CourseStats.Columns.COURSE_ID + " = ?";
+
+    private static final String DELETE = "DELETE FROM " + STATS + " WHERE " + CourseStats.Columns.COURSE_ID + " = ?";
+
+    // courses whose row is missing, differs from the counted totals, or belongs to a removed course
+    private static final String COUNT_DRIFT = "SELECT (SELECT COUNT(*) FROM (" + COUNTED + ") x "
+            + "LEFT JOIN " + STATS + " s ON s." + CourseStats.Columns.COURSE_ID + " = x." + CourseStats.Columns.COURSE_ID + " "
+            + "WHERE s." + CourseStats.Columns.COURSE_ID + " IS NULL "
+            + "OR s." + CourseStats.Columns.ENROLLED_COUNT + " <> x." + CourseStats.Columns.ENROLLED_COUNT + " "
+            + "OR s." + CourseStats.Columns.GRADE_COUNT + " <> x." + CourseStats.Columns.GRADE_COUNT + " "
+            + "OR ABS(s." + CourseStats.Columns.GRADE_SUM + " - x." + CourseStats.Columns.GRADE_SUM + ") > 1e-6) "
+            + "+ (SELECT COUNT(*) FROM " + STATS + " WHERE " + CourseStats.Columns.COURSE_ID + " NOT IN (SELECT "
+            + Course.Columns.ID + " FROM " + Course.TABLE_NAME + "))";
+
+    // the row's course in the correlated subqueries of SUBTRACT_STUDENTS
+    private static final String STATS_COURSE = STATS + "." + CourseStats.Columns.COURSE_ID;
+
+    private static final String SUBTRACT_STUDENTS = "WITH removed(id) AS (SELECT value FROM json_each(?)) "
+            + "UPDATE " + STATS + " SET "
+            + CourseStats.Columns.ENROLLED_COUNT + " = " + CourseStats.Columns.ENROLLED_COUNT + " - (SELECT COUNT(*) FROM "
+            + ENROLLMENT + " e WHERE e." + Course.EnrollmentColumns.COURSE_ID + " = " + STATS_COURSE + " AND e."
+            + Course.EnrollmentColumns.STUDENT_ID + " IN (SELECT id FROM removed)), "
+            + CourseStats.Columns.GRADE_COUNT + " = " + CourseStats.Columns.GRADE_COUNT + " - (SELECT COUNT(*) FROM "
+            + Grade.TABLE_NAME + " g WHERE g." + Grade.Columns.COURSE_ID + " = " + STATS_COURSE + " AND g."
+            + Grade.Columns.STUDENT_ID + " IN (SELECT id FROM removed)), "
+            + CourseStats.Columns.GRADE_SUM + " = " + CourseStats.Columns.GRADE_SUM + " - (SELECT COALESCE(SUM(g."
+            + Grade.Columns.GRADE + "), 0) FROM " + Grade.TABLE_NAME + " g WHERE g." + Grade.Columns.COURSE_ID + " = "
+            + STATS_COURSE + " AND g." + Grade.Columns.STUDENT_ID + " IN (SELECT id FROM removed)) "
+            + "WHERE " + CourseStats.Columns.COURSE_ID + " IN (SELECT " + Course.EnrollmentColumns.COURSE_ID + " FROM "
+            + ENROLLMENT + " WHERE " + Course.EnrollmentColumns.STUDENT_ID + " IN (SELECT id FROM removed) "
+            + "UNION SELECT " + Grade.Columns.COURSE_ID + " FROM " + Grade.TABLE_NAME + " WHERE "
+            + Grade.Columns.STUDENT_ID + " IN (SELECT id FROM removed))";
+
+    private static final Map<SharedSessionContractImplementor, CourseStatsChanges> sessions =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    // the map holds its values strongly, so they must not keep their session alive
+    private final WeakReference<SharedSessionContractImplementor> session;
+
+    private final Map<Integer, Change> changes = new LinkedHashMap<>();
+
+    private CourseStatsChanges(final SharedSessionContractImplementor session) {
+        this.session = new WeakReference<>(session);
+    }
+
+    public static CourseStatsChanges of(final SharedSessionContractImplementor session) {
+        return sessions.computeIfAbsent(session, s -> {
+            CourseStatsChanges created = new CourseStatsChanges(s);
+            s.getTransactionCoordinator().addObserver(created);
+            return created;
+        });
+    }
+
+    public void enrolled(final int courseId, final long count) {
+        change(courseId).enrolled += count;
+    }
+
+    public void graded(final int courseId, final long count, final double sum) {
+        Change change = change(courseId);
+        change.grades += count;
+        change.gradeSum += sum;
+    }
+
+    public void recount(final int courseId) {
+        change(courseId).recount = true;
+    }
+
+    public void removed(final int courseId) {
+        change(courseId).removed = true;
+    }
+
+    private Change change(final int courseId) {
+        return changes.computeIfAbsent(courseId, id -> new Change());
+    }
+
+    /**
+     * Subtracts the enrollments and grades of the students from the existing rows right away. Used before the
+     * students are deleted with bulk statements, which reach no listener. The ids are passed as one JSON array,
+     * so their number is not bound by SQLite's parameter limit.
+     */
+    public static void subtractStudents(final Connection connection, final Collection<Integer> studentIds) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SUBTRACT_STUDENTS)) {
+            statement.setString(1, studentIds.toString());
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Rewrites every row from the enrollment and grade tables and returns the number of courses whose row was
+     * missing or wrong. The changes collected so far are dropped, the recount already includes them.
+     */
+    public int reconcile() {
+        SharedSessionContractImplementor owner = session.get();
+        if (owner == null) {
+            return 0;
+        }
+        owner.getJdbcCoordinator().executeBatch();
+        Connection connection = owner.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection();
+        try (Statement statement = connection.createStatement()) {
+            int drifted;
+            try (ResultSet resultSet = statement.executeQuery(COUNT_DRIFT)) {
+                drifted = resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+            statement.executeUpdate("DELETE FROM " + STATS);
+            statement.executeUpdate(INSERT + COUNTED);
+            changes.clear();
+            return drifted;
+        } catch (SQLException e) {
+            throw owner.getJdbcServices().getSqlExceptionHelper().convert(e, "could not reconcile course statistics", COUNT_DRIFT);
+        }
+    }
+
+    private void apply(final Connection connection) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(UPDATE);
+             PreparedStatement insert = connection.prepareStatement(INSERT_COUNTED);
+             PreparedStatement delete = connection.prepareStatement(DELETE)) {
+            for (Map.Entry<Integer, Change> entry : changes.entrySet()) {
+                int courseId = entry.getKey();
+                Change change = entry.getValue();
+                if (change.removed || change.recount) {
+                    delete.setInt(1, courseId);
+                    delete.executeUpdate();
+                }
+                if (change.removed) {
+                    continue;
+                }
+                if (!change.recount) {
+                    update.setLong(1, change.enrolled);
+                    update.setLong(2, change.grades);
+                    update.setDouble(3, change.gradeSum);
+                    update.setInt(4, courseId);
+                }
+                if (change.recount || update.executeUpdate() == 0) {
+                    insert.setInt(1, courseId);
+                    insert.executeUpdate();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void afterBegin() {
+    }
+
+    @Override
+    public void beforeCompletion() {
+        SharedSessionContractImplementor owner = session.get();
+        if (owner == null || changes.isEmpty()) {
+            return;
+        }
+        // a stateless session may still hold inserts in a JDBC batch, the recount must see them
+        owner.getJdbcCoordinator().executeBatch();
+        try {
+            apply(owner.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection());
+        } catch (SQLException e) {
+            throw owner.getJdbcServices().getSqlExceptionHelper().convert(e, "could not update course statistics", UPDATE);
+        }
+    }
+
+    @Override
+    public void afterCompletion(final boolean successful, final boolean delayed) {
+        changes.clear();
+    }
+
+    private static final class Change {
+
+        private long enrolled;
+
+        private long grades;
+
+        private double gradeSum;
+
+        private boolean recount;
+
+        private boolean removed;
+    }
+}
@@ -0,0 +1,34 @@
+package pl.edu.agh.iisg.to.stats;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import pl.edu.agh.iisg.to.model.CourseStats;
+
+// registered in META-INF/services, applies to factories that map CourseStats
+public class CourseStatsIntegrator implements Integrator {
+
+    @Override
+    public void integrate(final Metadata metadata, final BootstrapContext bootstrapContext,
+                          final SessionFactoryImplementor sessionFactory) {
+        if (metadata.getEntityBinding(CourseStats.class.getName()) == null) {
+            return;
+        }
+        CourseStatsListener listener = new CourseStatsListener();
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().requireService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.PRE_COLLECTION_UPDATE, listener);
+        registry.appendListeners(EventType.PRE_COLLECTION_REMOVE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+    }
+
+    @Override
+    public void disintegrate(final SessionFactoryImplementor sessionFactory,
+                             final SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
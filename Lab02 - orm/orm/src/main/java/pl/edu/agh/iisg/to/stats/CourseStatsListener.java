@@ -0,0 +1,108 @@
+package pl.edu.agh.iisg.to.stats;
+
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PreCollectionRemoveEvent;
+import org.hibernate.event.spi.PreCollectionRemoveEventListener;
+import org.hibernate.event.spi.PreCollectionUpdateEvent;
+import org.hibernate.event.spi.PreCollectionUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.Grade;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Records the grade and enrollment changes flushed by a session in its {@link CourseStatsChanges}.
+ * Stateless sessions do not pass themselves to the listeners, so they record their changes explicitly.
+ */
+public class CourseStatsListener implements PostInsertEventListener, PostDeleteEventListener,
+        PreCollectionUpdateEventListener, PreCollectionRemoveEventListener, PostCollectionRecreateEventListener {
+
+    private static final String ROSTER_ROLE = Course.class.getName() + ".studentSet";
+
+    @Override
+    public void onPostInsert(final PostInsertEvent event) {
+        if (event.getSession() == null) {
+            return;
+        }
+        if (event.getEntity() instanceof Course) {
+            changes(event.getSession()).recount((Integer) event.getId());
+        } else if (event.getEntity() instanceof Grade grade) {
+            changes(event.getSession()).graded(courseId(event.getSession(), grade), 1, grade.grade());
+        }
+    }
+
+    @Override
+    public void onPostDelete(final PostDeleteEvent event) {
+        if (event.getSession() == null) {
+            return;
+        }
+        if (event.getEntity() instanceof Course) {
+            changes(event.getSession()).removed((Integer) event.getId());
+        } else if (event.getEntity() instanceof Grade grade) {
+            changes(event.getSession()).graded(courseId(event.getSession(), grade), -1, -grade.grade());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(final EntityPersister persister) {
+        return false;
+    }
+
+    @Override
+    public void onPreUpdateCollection(final PreCollectionUpdateEvent event) {
+        if (isRoster(event)) {
+            PersistentCollection<?> roster = event.getCollection();
+            if (roster.wasInitialized() && roster.getStoredSnapshot() instanceof Map<?, ?> snapshot) {
+                changes(event.getSession()).enrolled(ownerId(event), ((Collection<?>) roster).size() - snapshot.size());
+            } else {
+                changes(event.getSession()).recount(ownerId(event));
+            }
+        }
+    }
+
+    @Override
+    public void onPreRemoveCollection(final PreCollectionRemoveEvent event) {
+        if (isRoster(event)) {
+            PersistentCollection<?> roster = event.getCollection();
+            if (roster.wasInitialized() && roster.getStoredSnapshot() instanceof Map<?, ?> snapshot) {
+                changes(event.getSession()).enrolled(ownerId(event), -snapshot.size());
+            } else {
+                changes(event.getSession()).recount(ownerId(event));
+            }
+        }
+    }
+
+    @Override
+    public void onPostRecreateCollection(final PostCollectionRecreateEvent event) {
+        if (isRoster(event)) {
+            changes(event.getSession()).enrolled(ownerId(event), ((Collection<?>) event.getCollection()).size());
+        }
+    }
+
+    private static boolean isRoster(final AbstractCollectionEvent event) {
+        return ROSTER_ROLE.equals(event.getCollection().getRole()) && event.getAffectedOwnerIdOrNull() != null;
+    }
+
+    private static int ownerId(final AbstractCollectionEvent event) {
+        return (Integer) event.getAffectedOwnerIdOrNull();
+    }
+
+    // reads the id without initializing a lazy course proxy
+    private static int courseId(final EventSource session, final Grade grade) {
+        return (Integer) session.getFactory().getPersistenceUnitUtil().getIdentifier(grade.course());
+    }
+
+    private static CourseStatsChanges changes(final EventSource session) {
+        return CourseStatsChanges.of(session);
+    }
+}
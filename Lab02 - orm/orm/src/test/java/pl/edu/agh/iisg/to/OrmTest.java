@@ -1,27 +1,71 @@
 package pl.edu.agh.iisg.to;
 
+import org.hibernate.Hibernate;
+import org.hibernate.LockMode;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.opentest4j.AssertionFailedError;
+import pl.edu.agh.iisg.to.QueryBudgetExtension.QueryBudget;
 import pl.edu.agh.iisg.to.dao.CourseDao;
+import pl.edu.agh.iisg.to.dao.CourseStatsDao;
 import pl.edu.agh.iisg.to.dao.GradeDao;
 import pl.edu.agh.iisg.to.dao.StudentDao;
+import pl.edu.agh.iisg.to.dao.StudentFilter;
+import pl.edu.agh.iisg.to.dao.StudentRank;
+import pl.edu.agh.iisg.to.export.ExportFormat;
+import pl.edu.agh.iisg.to.ingest.BulkIngestService;
+import pl.edu.agh.iisg.to.ingest.IngestRecord;
+import pl.edu.agh.iisg.to.ingest.IngestResult;
 import pl.edu.agh.iisg.to.model.Course;
+import pl.edu.agh.iisg.to.model.CourseStats;
+import pl.edu.agh.iisg.to.model.Grade;
 import pl.edu.agh.iisg.to.model.Student;
 import pl.edu.agh.iisg.to.service.SchoolService;
+import pl.edu.agh.iisg.to.session.ChangeBatch;
+import pl.edu.agh.iisg.to.session.EntityChange;
+import pl.edu.agh.iisg.to.session.SessionFactoryProvider;
 import pl.edu.agh.iisg.to.session.SessionService;
+import pl.edu.agh.iisg.to.repository.AsyncStudentRepository;
 import pl.edu.agh.iisg.to.repository.StudentRepository;
 
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+@ExtendWith(QueryBudgetExtension.class)
 public class OrmTest {
 
     private final SessionService sessionService = new SessionService();
@@ -29,6 +73,7 @@ public class OrmTest {
     private final StudentDao studentDao = new StudentDao(sessionService);
     private final CourseDao courseDao = new CourseDao(sessionService);
     private final GradeDao gradeDao = new GradeDao(sessionService);
+    private final CourseStatsDao courseStatsDao = new CourseStatsDao(sessionService);
 
     private final StudentRepository studentRepository =
             new StudentRepository(studentDao, gradeDao, courseDao, sessionService);
@@ -39,6 +84,7 @@ public class OrmTest {
     @BeforeEach
     public void before() {
         sessionService.openSession();
+        clearDatabase();
     }
 
     @AfterEach
@@ -200,6 +246,35 @@ public class OrmTest {
         assertEquals(1, resultStudentGradesSize);
     }
 
+    @Test
+    public void studentsAreGradedInBulkWithoutLoadingGradeCollections(QueryBudget budget) {
+        // Given
+        var course = courseDao.create("Oceny").orElseThrow();
+        var loaded = studentDao.create("Kasia", "Kowalska", 2500000).orElseThrow();
+        Map<Student, Float> grades = new HashMap<>();
+        grades.put(loaded, 5.0f);
+        for (int i = 1; i <= 120; i++) {
+            var student = studentDao.create("Jan", "Nowak", 2500000 + i).orElseThrow();
+            schoolService.gradeStudent(student, course, 3.0f);
+            grades.put(student, 4.0f);
+        }
+        sessionService.clearSessionObjects();
+        var loadedGrades = studentDao.findByIndexNumber(loaded.indexNumber(), Student.Graphs.WITH_GRADES)
+                .orElseThrow()
+                .gradeSet();
+
+        // When
+        int graded = budget.expect(6, () -> schoolService.gradeStudents(course, grades));
+
+        // Then
+        assertEquals(121, graded);
+        assertEquals(List.of(5.0f), loadedGrades.stream().map(Grade::grade).toList());
+        sessionService.clearSessionObjects();
+        assertEquals(241, courseDao.findById(course.id()).orElseThrow().gradeSet().size());
+        assertEquals(2, studentDao.findByIndexNumber(2500001).orElseThrow().gradeSet().size());
+        assertEquals(241, courseStatsDao.findByCourse(course).orElseThrow().gradeCount());
+    }
+
     @Test
     public void courseReportCanBeObtained() {
         // Given
@@ -235,6 +310,442 @@ public class OrmTest {
         assertEquals(expectedReport, actualReport);
     }
 
+    @Test
+    public void courseReportIsBuiltFromOneQueryWithoutLoadingEntities() {
+        // Given
+        var graded = studentDao.create("Kasia", "Kowalska", 1500124).orElseThrow();
+        var notGraded = studentDao.create("Piotr", "Budynek", 1500125).orElseThrow();
+        var course = courseDao.create("Raporty").orElseThrow();
+        var otherCourse = courseDao.create("Inny").orElseThrow();
+        schoolService.enrollStudent(course, graded);
+        schoolService.enrollStudent(course, notGraded);
+        schoolService.enrollStudent(otherCourse, notGraded);
+        schoolService.gradeStudent(graded, course, 4.5f);
+        schoolService.gradeStudent(notGraded, otherCourse, 2.0f);
+        sessionService.clearSessionObjects();
+
+        var statistics = sessionService.getStatistics();
+        long statementsBefore = statistics.getPrepareStatementCount();
+        long loadsBefore = statistics.getEntityLoadCount();
+
+        // When
+        Map<String, List<Float>> report = schoolService.getStudentGrades(course.name());
+
+        // Then
+        assertEquals(Map.of("Kasia Kowalska", List.of(4.5f), "Piotr Budynek", List.of()), report);
+        assertEquals(1, statistics.getPrepareStatementCount() - statementsBefore);
+        assertEquals(loadsBefore, statistics.getEntityLoadCount());
+        assertEquals(0, sessionService.getSession().getStatistics().getEntityCount());
+    }
+
+    @Test
+    public void finderLoadsTheNamedFetchPlanInOneQuery() {
+        // Given
+        var student1 = studentDao.create("Kasia", "Kowalska", 1700124).orElseThrow();
+        var student2 = studentDao.create("Piotr", "Budynek", 1700125).orElseThrow();
+        var course = courseDao.create("Grafy").orElseThrow();
+        for (Student student : List.of(student1, student2)) {
+            schoolService.enrollStudent(course, student);
+            schoolService.gradeStudent(student, course, 4.0f);
+        }
+        sessionService.clearSessionObjects();
+        sessionService.getSessionFactory().getCache().evictAllRegions();
+        var statistics = sessionService.getStatistics();
+        long statementsBefore = statistics.getPrepareStatementCount();
+
+        // When
+        var loadedCourse = courseDao.findByName(course.name(), Course.Graphs.WITH_ROSTER_AND_GRADES).orElseThrow();
+        int rosterSize = loadedCourse.studentSet().size();
+        var gradedStudents = loadedCourse.gradeSet().stream().map(Grade::student).map(Student::fullName).toList();
+        long courseStatements = statistics.getPrepareStatementCount() - statementsBefore;
+
+        sessionService.clearSessionObjects();
+        sessionService.getSessionFactory().getCache().evictAllRegions();
+        statementsBefore = statistics.getPrepareStatementCount();
+        var loadedStudent = studentDao.findById(student1.id(), Student.Graphs.WITH_GRADES).orElseThrow();
+        var gradedCourses = loadedStudent.gradeSet().stream().map(Grade::course).map(Course::name).toList();
+        long studentStatements = statistics.getPrepareStatementCount() - statementsBefore;
+
+        // Then
+        assertEquals(2, rosterSize);
+        assertEquals(2, gradedStudents.size());
+        assertTrue(courseStatements <= 2);
+        assertEquals(List.of(course.name()), gradedCourses);
+        assertEquals(1, studentStatements);
+        assertThrows(IllegalArgumentException.class,
+                () -> studentDao.findByIndexNumber(student2.indexNumber(), Course.Graphs.WITH_ROSTER));
+        assertThrows(IllegalArgumentException.class, () -> studentDao.findById(student2.id(), "Student.unknown"));
+    }
+
+    @Test
+    public void termDataCanBeIngestedInBulk() {
+        // Given
+        var existing = studentDao.create("Kasia", "Kowalska", 1900000).orElseThrow();
+        var ingestService = new BulkIngestService(sessionService.getSessionFactory(), 100);
+        List<String> courseNames = List.of("Analiza", "Algebra", "Fizyka");
+        Stream<IngestRecord> records = Stream.of(
+                IntStream.rangeClosed(0, 20).mapToObj(i -> IngestRecord.student("Jan", "Nowak" + i, 1900000 + i)),
+                courseNames.stream().map(IngestRecord::course),
+                IntStream.rangeClosed(0, 20).boxed().flatMap(i -> courseNames.stream()
+                        .map(name -> IngestRecord.enrollment(1900000 + i, name))),
+                IntStream.range(0, 21 * 3 * 10).mapToObj(i -> IngestRecord.grade(1900000 + i / 30, courseNames.get(i / 10 % 3), 2.0f + i % 4)),
+                Stream.of(IngestRecord.grade(1999999, "Analiza", 5.0f), IngestRecord.enrollment(1900001, "Nieznany"))
+        ).flatMap(stream -> stream);
+
+        // When
+        IngestResult result = ingestService.ingest(records);
+
+        // Then
+        assertTrue(result.completed());
+        assertEquals(20, result.students());
+        assertEquals(3, result.courses());
+        assertEquals(63, result.enrollments());
+        assertEquals(630, result.grades());
+        assertEquals(3, result.skipped());
+        assertEquals(21, studentDao.findAll().size());
+
+        Map<String, List<Float>> report = schoolService.getStudentGrades("Analiza");
+        assertEquals(21, report.size());
+        assertEquals(10, report.get(existing.fullName()).size());
+        assertEquals(3, studentDao.findByIndexNumber(1900005, Student.Graphs.WITH_COURSES).orElseThrow().courseSet().size());
+        assertEquals(0, courseStatsDao.reconcile());
+    }
+
+    @Test
+    public void courseQueriesStayWithinStatementBudget(QueryBudget budget) {
+        // Given
+        var course = courseDao.create("Budzet").orElseThrow();
+        for (int i = 0; i < 10; i++) {
+            var student = studentDao.create("Jan", "Nowak" + i, 2000000 + i).orElseThrow();
+            schoolService.enrollStudent(course, student);
+            schoolService.gradeStudent(student, course, 4.0f);
+        }
+        sessionService.clearSessionObjects();
+        sessionService.getSessionFactory().getCache().evictAllRegions();
+
+        // When
+        var report = budget.expect(1, () -> schoolService.getStudentGrades(course.name()));
+        var students = budget.expect(2, () -> studentRepository.findAllByCourseName(course.name()));
+
+        // Then
+        assertEquals(10, report.size());
+        assertEquals(10, students.size());
+        assertTrue(sessionService.lastTransactionStatistics().orElseThrow().collectionLoads() > 0);
+        assertThrows(AssertionFailedError.class, () -> budget.expect(100, () -> students.stream()
+                .mapToInt(student -> student.gradeSet().size())
+                .sum()));
+    }
+
+    @Test
+    public void enrollmentUsesJoinTableWithoutLoadingRoster(QueryBudget budget) {
+        // Given
+        var course = courseDao.create("Tlumy").orElseThrow();
+        var emptyCourse = courseDao.create("Pusty").orElseThrow();
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            students.add(new Student("Jan", "Nowak", 2200000 + i));
+        }
+        studentDao.saveAll(students).forEach(student -> schoolService.enrollStudent(course, student));
+        var newcomer = studentDao.create("Kasia", "Kowalska", 2200300).orElseThrow();
+        sessionService.clearSessionObjects();
+        sessionService.getSessionFactory().getCache().evictAllRegions();
+
+        // When
+        boolean enrolled = budget.expect(4, () -> schoolService.enrollStudent(course, newcomer));
+        boolean enrolledAgain = budget.expect(4, () -> schoolService.enrollStudent(course, newcomer));
+
+        // Then
+        assertTrue(enrolled);
+        assertFalse(enrolledAgain);
+        assertFalse(Hibernate.isInitialized(courseDao.managed(course).studentSet()));
+        assertTrue(courseDao.isEnrolled(course, newcomer));
+        assertFalse(courseDao.isEnrolled(emptyCourse, newcomer));
+        assertEquals(301, courseDao.countEnrollments(course));
+        assertEquals(Map.of("Pusty", 0L, "Tlumy", 301L), courseDao.countEnrollmentsByCourse());
+        assertTrue(courseDao.managed(course).studentSet().contains(studentDao.managed(newcomer)));
+    }
+
+    @Test
+    public void studentsAreRankedByAverageGradeInOneQuery(QueryBudget budget) {
+        // Given
+        var kasia = studentDao.create("Kasia", "Kowalska", 2300001).orElseThrow();
+        var piotr = studentDao.create("Piotr", "Budynek", 2300002).orElseThrow();
+        var jan = studentDao.create("Jan", "Nowak", 2300003).orElseThrow();
+        var algebra = courseDao.create("Algebra").orElseThrow();
+        var fizyka = courseDao.create("Fizyka").orElseThrow();
+        schoolService.gradeStudents(algebra, Map.of(kasia, 5.0f, piotr, 4.5f, jan, 3.0f));
+        schoolService.gradeStudents(algebra, Map.of(kasia, 4.0f));
+        schoolService.gradeStudents(fizyka, Map.of(jan, 5.0f, kasia, 2.0f));
+        sessionService.clearSessionObjects();
+
+        // When
+        Map<String, List<StudentRank>> leaders = budget.expect(1, () -> schoolService.getTopStudents(1));
+        Map<String, List<StudentRank>> topTwo = budget.expect(1, () -> schoolService.getTopStudents(2));
+        Optional<StudentRank> janInAlgebra = budget.expect(1, () -> schoolService.getStudentRank(algebra, jan));
+
+        // Then
+        assertEquals(List.of("Algebra", "Fizyka"), List.copyOf(leaders.keySet()));
+        assertEquals(List.of(piotr.id(), kasia.id()), leaders.get("Algebra").stream().map(StudentRank::studentId).toList());
+        assertEquals(List.of(1L, 1L), leaders.get("Algebra").stream().map(StudentRank::rank).toList());
+        assertEquals(List.of(jan.id()), leaders.get("Fizyka").stream().map(StudentRank::studentId).toList());
+        // the tie takes the second place, so the third best is ranked 3
+        assertEquals(2, topTwo.get("Algebra").size());
+        assertEquals(List.of(jan.id(), kasia.id()), schoolService.getTopStudents(fizyka, 2).stream()
+                .map(StudentRank::studentId).toList());
+
+        assertTrue(janInAlgebra.isPresent());
+        assertEquals(3, janInAlgebra.get().rank());
+        assertEquals(3.0, janInAlgebra.get().averageGrade(), 1e-6);
+        assertEquals(1, janInAlgebra.get().gradeCount());
+        assertEquals(kasia.indexNumber(), leaders.get("Algebra").get(1).indexNumber());
+        assertEquals(2, leaders.get("Algebra").get(1).gradeCount());
+        assertFalse(schoolService.getStudentRank(fizyka, piotr).isPresent());
+    }
+
+    @Test
+    public void studentsCanBeFilteredWithCachedQueryPlans(QueryBudget budget) {
+        // Given
+        var kasia = studentDao.create("Kasia", "Kowalska", 2400001).orElseThrow();
+        var jan = studentDao.create("Jan", "Kowalski", 2400002).orElseThrow();
+        var piotr = studentDao.create("Piotr", "Nowak", 2400003).orElseThrow();
+        var course = courseDao.create("Filtry").orElseThrow();
+        schoolService.enrollStudent(course, kasia);
+        schoolService.enrollStudent(course, piotr);
+        schoolService.gradeStudents(course, Map.of(kasia, 5.0f, jan, 3.0f));
+        schoolService.gradeStudents(course, Map.of(kasia, 4.0f));
+        sessionService.clearSessionObjects();
+
+        // When
+        List<Student> kowal = budget.expect(1, () -> studentDao.find(new StudentFilter()
+                .lastNamePrefix("Kowal").sortBy(StudentFilter.Sort.INDEX_NUMBER, false)));
+        List<Student> escaped = studentDao.find(new StudentFilter().lastNamePrefix("Kowal_"));
+        List<Student> goodInCourse = budget.expect(1, () -> studentDao.find(new StudentFilter()
+                .enrolledIn(course).averageGradeAtLeast(4.0f)));
+        List<Student> best = budget.expect(1, () -> studentDao.find(new StudentFilter()
+                .indexNumberBetween(2400002, 2400003).sortBy(StudentFilter.Sort.AVERAGE_GRADE, true).limit(1)));
+        List<Student> weak = studentDao.find(new StudentFilter().averageGradeBelow(4.0f));
+        var firstRound = studentDao.filterPlanStatistics();
+
+        List<Student> nowak = studentDao.find(new StudentFilter()
+                .lastNamePrefix("Nowa").sortBy(StudentFilter.Sort.INDEX_NUMBER, false));
+        List<Student> inCourse = studentDao.find(new StudentFilter().enrolledIn(course).averageGradeAtLeast(2.0f));
+        var secondRound = studentDao.filterPlanStatistics();
+
+        // Then
+        assertEquals(List.of(kasia.id(), jan.id()), kowal.stream().map(Student::id).toList());
+        assertTrue(escaped.isEmpty());
+        assertEquals(List.of(kasia.id()), goodInCourse.stream().map(Student::id).toList());
+        assertEquals(List.of(jan.id()), best.stream().map(Student::id).toList());
+        assertEquals(List.of(jan.id()), weak.stream().map(Student::id).toList());
+        assertEquals(List.of(piotr.id()), nowak.stream().map(Student::id).toList());
+        assertEquals(List.of(kasia.id()), inCourse.stream().map(Student::id).toList());
+
+        assertEquals(5, firstRound.queries());
+        assertEquals(5, secondRound.queries());
+        assertEquals(firstRound.misses(), secondRound.misses());
+        // the parsed query and its SQL are both found in the cache
+        assertEquals(firstRound.hits() + 4, secondRound.hits());
+        assertTrue(secondRound.hitRate() > firstRound.hitRate());
+    }
+
+    @Test
+    public void limitedAndUnlimitedSearchesShareTheirQuery() {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            studentDao.create("Jan", "Limitowski", 2500000 + i);
+        }
+        sessionService.clearSessionObjects();
+
+        // When
+        List<Student> all = studentDao.find(new StudentFilter().lastNamePrefix("Limit"));
+        var unlimited = studentDao.filterPlanStatistics();
+        List<Student> firstTwo = studentDao.find(new StudentFilter().lastNamePrefix("Limit").limit(2));
+        var limited = studentDao.filterPlanStatistics();
+
+        // Then
+        assertEquals(5, all.size());
+        assertEquals(all.subList(0, 2).stream().map(Student::id).toList(), firstTwo.stream().map(Student::id).toList());
+        assertEquals(1, unlimited.queries());
+        assertEquals(1, limited.queries());
+        // one search adds the two lookups of one query, at least the parsed query is reused
+        assertEquals(unlimited.hits() + unlimited.misses() + 2, limited.hits() + limited.misses());
+        assertTrue(limited.hits() > unlimited.hits());
+    }
+
+    @Test
+    public void courseStatsFollowEnrollmentsGradesAndRemovals(QueryBudget budget) {
+        // Given
+        var algebra = courseDao.create("Algebra").orElseThrow();
+        var biology = courseDao.create("Biologia").orElseThrow();
+        var student1 = studentDao.create("Adam", "Kowalski", 2300001).orElseThrow();
+        var student2 = studentDao.create("Jan", "Nowak", 2300002).orElseThrow();
+        var student3 = studentDao.create("Kasia", "Kowalska", 2300003).orElseThrow();
+        schoolService.enrollStudent(algebra, student1);
+        schoolService.enrollStudent(algebra, student2);
+        schoolService.enrollStudent(biology, student3);
+        schoolService.gradeStudent(student1, algebra, 4.0f);
+        schoolService.gradeStudent(student2, algebra, 5.0f);
+        schoolService.gradeStudent(student3, biology, 3.0f);
+        sessionService.clearSessionObjects();
+        // enrolled through the join table, the roster is not loaded
+        schoolService.enrollStudent(algebra, student3);
+
+        // When
+        var overview = budget.expect(1, courseStatsDao::findAll);
+        schoolService.removeStudent(student1.indexNumber());
+        var algebraAfterRemoval = courseStatsDao.findByCourse(algebra).orElseThrow();
+
+        // Then
+        assertEquals(List.of("Algebra", "Biologia"), overview.stream().map(CourseStats::courseName).toList());
+        assertEquals(3, overview.get(0).enrolledCount());
+        assertEquals(2, overview.get(0).gradeCount());
+        assertEquals(4.5, overview.get(0).averageGrade().orElseThrow(), 1e-6);
+        assertEquals(1, overview.get(1).enrolledCount());
+        assertEquals(3.0, overview.get(1).averageGrade().orElseThrow(), 1e-6);
+        assertEquals(2, algebraAfterRemoval.enrolledCount());
+        assertEquals(1, algebraAfterRemoval.gradeCount());
+        assertEquals(5.0, algebraAfterRemoval.gradeSum(), 1e-6);
+        assertEquals(0, courseStatsDao.reconcile());
+    }
+
+    @Test
+    public void reconcileRepairsCourseStatsWrittenPastHibernate() {
+        // Given
+        var course = courseDao.create("Chemia").orElseThrow();
+        var student = studentDao.create("Kasia", "Kowalska", 2400124).orElseThrow();
+        schoolService.enrollStudent(course, student);
+        schoolService.gradeStudent(student, course, 4.5f);
+        sessionService.doAsTransaction(() -> sessionService.getSession()
+                .createNativeMutationQuery("UPDATE " + CourseStats.TABLE_NAME + " SET enrolled_count = 7, grade_count = 0")
+                .executeUpdate());
+
+        // When
+        int repaired = courseStatsDao.reconcile();
+
+        // Then
+        assertEquals(1, repaired);
+        var stats = courseStatsDao.findByCourse(course).orElseThrow();
+        assertEquals(1, stats.enrolledCount());
+        assertEquals(1, stats.gradeCount());
+        assertEquals(4.5, stats.averageGrade().orElseThrow(), 1e-6);
+        assertEquals(0, courseStatsDao.reconcile());
+    }
+
+    @Test
+    public void reportsLoadReadOnlyEntitiesWithoutFlushing() {
+        // Given
+        var course = courseDao.create("Raport").orElseThrow();
+        studentDao.create("Kasia", "Kowalska", 2100124).orElseThrow();
+        sessionService.clearSessionObjects();
+
+        // When
+        boolean loadedReadOnly = sessionService.doAsReadOnlyTransaction(() -> sessionService.getSession()
+                .isReadOnly(studentDao.findAll().get(0))).orElseThrow();
+        sessionService.clearSessionObjects();
+        var student = studentDao.findAll().get(0);
+        var readStatistics = sessionService.lastTransactionStatistics().orElseThrow();
+        boolean readOnlyAfterwards = sessionService.getSession().isReadOnly(student);
+        boolean enrolled = schoolService.enrollStudent(course, student);
+        sessionService.clearSessionObjects();
+
+        // Then
+        assertTrue(loadedReadOnly);
+        assertFalse(readOnlyAfterwards);
+        assertEquals(0, readStatistics.flushes());
+        assertFalse(sessionService.getSession().isDefaultReadOnly());
+        assertTrue(enrolled);
+        assertEquals(List.of(student), studentRepository.findAllByCourseName(course.name()));
+    }
+
+    @Test
+    public void readOnlyTransactionLeavesLazyAssociationsOfABoundSessionWritable() {
+        // Given
+        var course = courseDao.create("Pelnomocnik").orElseThrow();
+        var student = studentDao.create("Kasia", "Kowalska", 2100125).orElseThrow();
+        schoolService.gradeStudent(student, course, 4.0f);
+        int gradeId = sessionService.doAsTransaction(() -> sessionService.getSession()
+                .createSelectionQuery("SELECT g.id FROM Grade g", Integer.class)
+                .getSingleResult()).orElseThrow();
+        sessionService.clearSessionObjects();
+        sessionService.getSessionFactory().getCache().evictAllRegions();
+
+        // When
+        var grade = sessionService.doAsReadOnlyTransaction(() -> sessionService.getSession().get(Grade.class, gradeId))
+                .orElseThrow();
+
+        // Then
+        assertFalse(Hibernate.isInitialized(grade.student()));
+        assertFalse(sessionService.getSession().isReadOnly(grade));
+        assertFalse(sessionService.getSession().isReadOnly(grade.student()));
+        assertFalse(sessionService.getSession().isReadOnly(grade.course()));
+    }
+
+    @Test
+    public void studentsAndGradesCanBeExported() {
+        // Given
+        var student1 = studentDao.create("Kasia", "Kowalska", 2200124).orElseThrow();
+        studentDao.create("Piotr", "Budynek, Jr.", 2200125).orElseThrow();
+        var course1 = courseDao.create("Bazy").orElseThrow();
+        var course2 = courseDao.create("Sieci \"IP\"").orElseThrow();
+        schoolService.gradeStudent(student1, course2, 3.5f);
+        schoolService.gradeStudent(student1, course1, 5.0f);
+        var csv = new StringWriter();
+        var jsonLines = new StringWriter();
+
+        // When
+        var csvCount = studentDao.exportAll(csv, ExportFormat.CSV);
+        var jsonCount = studentDao.exportAll(jsonLines, ExportFormat.JSON_LINES);
+
+        // Then
+        assertEquals(Optional.of(2L), csvCount);
+        assertEquals(Optional.of(2L), jsonCount);
+        assertEquals("""
+                index_number,first_name,last_name,course,grade
+                2200125,Piotr,"Budynek, Jr.",,
+                2200124,Kasia,Kowalska,Bazy,5.0
+                2200124,Kasia,Kowalska,"Sieci ""IP""\",3.5
+                """, csv.toString());
+        assertEquals("""
+                {"indexNumber":2200125,"firstName":"Piotr","lastName":"Budynek, Jr.","grades":[]}
+                {"indexNumber":2200124,"firstName":"Kasia","lastName":"Kowalska","grades":[{"course":"Bazy","grade":5.0},\
+                {"course":"Sieci \\"IP\\"","grade":3.5}]}
+                """, jsonLines.toString());
+    }
+
+    @Test
+    public void studentsCanBeRemovedInBulk() {
+        // Given
+        var kept = studentDao.create("Kasia", "Kowalska", 1600124).orElseThrow();
+        var removed1 = studentDao.create("Piotr", "Budynek", 1600125).orElseThrow();
+        var removed2 = studentDao.create("Jan", "Nowak", 1600126).orElseThrow();
+        var course = courseDao.create("Czystka").orElseThrow();
+        for (Student student : List.of(kept, removed1, removed2)) {
+            schoolService.enrollStudent(course, student);
+            for (int i = 0; i < 10; i++) {
+                schoolService.gradeStudent(student, course, 3.0f);
+            }
+        }
+        var statistics = sessionService.getStatistics();
+        long statementsBefore = statistics.getPrepareStatementCount();
+
+        // When
+        int removedCount = studentRepository.removeAll(List.of(removed1.indexNumber(), removed2.indexNumber(), 1600999));
+
+        // Then
+        assertEquals(2, removedCount);
+        assertTrue(statistics.getPrepareStatementCount() - statementsBefore <= 5);
+        assertFalse(sessionService.getSession().contains(removed1));
+        assertEquals(List.of(kept), studentDao.findAll());
+        assertEquals(Set.of(kept), course.studentSet());
+        assertEquals(10, course.gradeSet().size());
+
+        sessionService.clearSessionObjects();
+        var reloadedCourse = courseDao.findById(course.id()).orElseThrow();
+        assertEquals(Set.of(kept), reloadedCourse.studentSet());
+        assertEquals(10, reloadedCourse.gradeSet().size());
+        assertEquals(Map.of("Kasia Kowalska", Collections.nCopies(10, 3.0f)), schoolService.getStudentGrades(course.name()));
+    }
+
     @Test
     public void studentCanBeRemovedFromSchool() {
         // Given
@@ -259,6 +770,294 @@ public class OrmTest {
         assertFalse(courseStudents.contains(student));
     }
 
+    @Test
+    public void servicesCanBeUsedConcurrentlyWithoutBoundSession() throws Exception {
+        // Given
+        var student = studentDao.create("Kasia", "Kowalska", 1100124).orElseThrow();
+        var course = courseDao.create("Bazy").orElseThrow();
+        schoolService.enrollStudent(course, student);
+        schoolService.gradeStudent(student, course, 4.0f);
+
+        // When
+        List<Future<Map<String, List<Float>>>> reports = new ArrayList<>();
+        List<Future<Optional<Student>>> students = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 16; i++) {
+                reports.add(executor.submit(() -> schoolService.getStudentGrades("Bazy")));
+                students.add(executor.submit(() -> studentDao.findByIndexNumber(1100124)));
+            }
+        }
+
+        // Then
+        for (Future<Map<String, List<Float>>> report : reports) {
+            assertEquals(Map.of("Kasia Kowalska", List.of(4.0f)), report.get());
+        }
+        for (Future<Optional<Student>> foundStudent : students) {
+            assertEquals(student, foundStudent.get().orElseThrow());
+        }
+    }
+
+    @Test
+    public void idBlocksAreSharedBetweenConcurrentSessions() throws Exception {
+        // Given
+        studentDao.create("Kasia", "Kowalska", 1800000).orElseThrow();
+        long reservedBefore = reservedStudentIds();
+
+        // When
+        List<Future<Optional<Student>>> created = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 1; i <= 200; i++) {
+                int indexNumber = 1800000 + i;
+                created.add(executor.submit(() -> studentDao.create("Jan", "Nowak", indexNumber)));
+            }
+        }
+
+        // Then
+        Set<Integer> ids = new HashSet<>();
+        for (Future<Optional<Student>> student : created) {
+            ids.add(student.get().orElseThrow().id());
+        }
+        assertEquals(200, ids.size());
+        assertEquals(201, studentDao.findAll().size());
+        // a session per insert, yet far fewer blocks than inserts
+        assertTrue(reservedStudentIds() - reservedBefore <= 50L * 20);
+    }
+
+    @Test
+    public void idsAreReservedAfterTheFirstReservingTransactionRollsBack() throws Exception {
+        // Given a new database, in which no id block was reserved yet
+        Path dbFile = Files.createTempFile("orm-test-ids-", ".db");
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .configure()
+                .applySetting(AvailableSettings.JAKARTA_JDBC_URL, "jdbc:sqlite:" + dbFile)
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create")
+                // closing the factory would close the cache regions the shared factory uses
+                .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, false)
+                .build();
+        try (SessionFactory sessionFactory = new MetadataSources(registry).buildMetadata().buildSessionFactory()) {
+            SessionService newSessionService = new SessionService(sessionFactory);
+            StudentDao newStudentDao = new StudentDao(newSessionService);
+
+            // When
+            Optional<Student> rolledBack = newSessionService.doAsTransaction(() -> {
+                newSessionService.getSession().persist(new Student("Jan", "Nowak", 1900000));
+                throw new IllegalStateException("rolled back after the first reservation");
+            });
+            Optional<Student> created = newStudentDao.create("Kasia", "Kowalska", 1900001);
+
+            // Then
+            assertTrue(rolledBack.isEmpty());
+            assertTrue(created.isPresent());
+            assertEquals(List.of(created.get()), newStudentDao.findAll());
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+            Files.deleteIfExists(dbFile);
+        }
+    }
+
+    @Test
+    public void asyncRepositoryRunsEachCallInItsOwnSession() {
+        // Given
+        List<CompletableFuture<Optional<Student>>> added = new ArrayList<>();
+        List<Student> students;
+        try (var asyncRepository = new AsyncStudentRepository(studentRepository, sessionService.getSessionFactory())) {
+            for (int i = 0; i < 50; i++) {
+                added.add(asyncRepository.add(new Student("Jan", "Nowak", 1900000 + i)));
+            }
+            students = added.stream().map(CompletableFuture::join).map(Optional::orElseThrow).toList();
+
+            // When
+            List<CompletableFuture<Optional<Student>>> found = students.stream()
+                    .map(student -> asyncRepository.getById(student.id()))
+                    .toList();
+            asyncRepository.remove(students.get(0)).join();
+
+            // Then
+            for (int i = 1; i < students.size(); i++) {
+                assertEquals(students.get(i), found.get(i).join().orElseThrow());
+            }
+            assertEquals(49, asyncRepository.findAll().join().size());
+        }
+        assertEquals(49, studentDao.findAll().size());
+        assertFalse(studentDao.findByIndexNumber(students.get(0).indexNumber()).isPresent());
+    }
+
+    @Test
+    public void naturalIdLookupsAreServedFromSecondLevelCache() {
+        // Given
+        var student = studentDao.create("Kasia", "Kowalska", 1200124).orElseThrow();
+        var course = courseDao.create("Cache").orElseThrow();
+        sessionService.clearSessionObjects();
+
+        var statistics = sessionService.getStatistics();
+        studentDao.findByIndexNumber(student.indexNumber());
+        courseDao.findByName(course.name());
+        sessionService.clearSessionObjects();
+        long naturalIdQueries = statistics.getNaturalIdQueryExecutionCount();
+        long entityLoads = statistics.getEntityLoadCount();
+        long cacheHits = statistics.getSecondLevelCacheHitCount();
+
+        // When
+        var foundStudent = studentDao.findByIndexNumber(student.indexNumber());
+        var foundCourse = courseDao.findByName(course.name());
+
+        // Then
+        assertEquals(student, foundStudent.orElseThrow());
+        assertEquals(course, foundCourse.orElseThrow());
+        assertEquals(naturalIdQueries, statistics.getNaturalIdQueryExecutionCount());
+        assertEquals(entityLoads, statistics.getEntityLoadCount());
+        assertTrue(statistics.getSecondLevelCacheHitCount() >= cacheHits + 2);
+        assertTrue(statistics.getNaturalIdStatistics(Student.class.getName()).getCacheHitCount() > 0);
+    }
+
+    @Test
+    public void saveAllSendsInsertsInJdbcBatches() {
+        // Given
+        int count = 200;
+        int batchSize = sessionService.getSessionFactory().unwrap(SessionFactoryImplementor.class)
+                .getSessionFactoryOptions().getJdbcBatchSize();
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            students.add(new Student("Jan", "Nowak", 1300000 + i));
+        }
+        var statistics = sessionService.getStatistics();
+
+        long statementsBefore = statistics.getPrepareStatementCount();
+        for (int i = 0; i < count; i++) {
+            studentDao.create("Adam", "Kowalski", 1400000 + i);
+        }
+        long oneByOneStatements = statistics.getPrepareStatementCount() - statementsBefore;
+
+        // When
+        statementsBefore = statistics.getPrepareStatementCount();
+        var saved = studentDao.saveAll(students);
+        long batchedStatements = statistics.getPrepareStatementCount() - statementsBefore;
+
+        // Then
+        assertEquals(count, saved.size());
+        assertEquals(2 * count, studentDao.findAll().size());
+        assertTrue(oneByOneStatements >= count);
+        assertTrue(batchedStatements <= 3 * count / batchSize);
+    }
+
+    @Test
+    public void conflictingTransactionIsRetriedWithFreshState() {
+        // Given
+        Course course = courseDao.create("TO").orElseThrow();
+        Course stale = courseDao.findById(course.id()).orElseThrow();
+        sessionService.getSessionFactory().inTransaction(other ->
+                other.lock(other.get(Course.class, course.id()), LockMode.OPTIMISTIC_FORCE_INCREMENT));
+
+        // When
+        List<Long> versionsSeen = new ArrayList<>();
+        var version = sessionService.doAsRetryingTransaction(() -> {
+            Course managed = courseDao.managed(stale);
+            versionsSeen.add(managed.version());
+            sessionService.getSession().lock(managed, LockMode.OPTIMISTIC_FORCE_INCREMENT);
+            return managed.version();
+        });
+
+        // Then
+        assertEquals(List.of(0L, 1L), versionsSeen);
+        assertTrue(version.isPresent());
+        var conflicts = sessionService.getConflictStatistics();
+        assertEquals(1, conflicts.transactions());
+        assertEquals(2, conflicts.attempts());
+        assertEquals(1, conflicts.conflicts());
+        assertEquals(0, conflicts.exhausted());
+        assertEquals(0.5, conflicts.conflictRate());
+        sessionService.clearSessionObjects();
+        assertEquals(2, courseDao.findById(course.id()).orElseThrow().version());
+    }
+
+    @Test
+    public void committedChangesArePublishedOncePerTransaction() throws InterruptedException {
+        // Given
+        BlockingQueue<ChangeBatch> batches = new LinkedBlockingQueue<>();
+        CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+        sessionService.getChangeStream().subscribe(new Flow.Subscriber<ChangeBatch>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.complete(s);
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ChangeBatch batch) {
+                batches.add(batch);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        // When
+        Student student = studentDao.create("Jan", "Nowak", 123456).orElseThrow();
+        Course course = courseDao.create("TO").orElseThrow();
+        schoolService.gradeStudent(student, course, 5.0f);
+        sessionService.doAsTransaction(() -> {
+            studentDao.create("Anna", "Kowalska", 654321);
+            throw new IllegalStateException("rolled back");
+        });
+        sessionService.clearSessionObjects();
+        studentRepository.remove(student);
+
+        // Then
+        ChangeBatch created = batches.poll(5, TimeUnit.SECONDS);
+        ChangeBatch opened = batches.poll(5, TimeUnit.SECONDS);
+        ChangeBatch graded = batches.poll(5, TimeUnit.SECONDS);
+        ChangeBatch removed = batches.poll(5, TimeUnit.SECONDS);
+        assertEquals(List.of(new EntityChange(EntityChange.Type.INSERTED, Student.class, student.id())), created.changes());
+        assertEquals(List.of(new EntityChange(EntityChange.Type.INSERTED, Course.class, course.id())), opened.changes());
+        assertEquals(1, graded.changes().size());
+        assertEquals(EntityChange.Type.INSERTED, graded.changes().get(0).type());
+        assertEquals(1, graded.ids(Grade.class).size());
+        assertEquals(Set.of(student.id()), removed.ids(Student.class));
+        assertEquals(EntityChange.Type.DELETED, removed.changes().get(0).type());
+        assertEquals(created.sequence() + 1, opened.sequence());
+        assertEquals(created.sequence() + 2, graded.sequence());
+        assertEquals(created.sequence() + 3, removed.sequence());
+        Assertions.assertNull(batches.poll(100, TimeUnit.MILLISECONDS));
+        subscription.join().cancel();
+    }
+
+    @Test
+    public void sessionFactoryIsBuiltOnceWithTimedBootstrap() {
+        // When
+        var sessionFactory = SessionFactoryProvider.getSessionFactory();
+        var timings = SessionFactoryProvider.bootstrapTimings();
+
+        // Then
+        assertTrue(sessionFactory == SessionFactoryProvider.getSessionFactory());
+        assertTrue(timings.total().toNanos() > 0);
+        assertEquals(timings.total(),
+                timings.configure().plus(timings.metadata()).plus(timings.factory()).plus(timings.schema()));
+    }
+
+    // the SessionFactory is shared by all tests, so the schema is created once and emptied before every test
+    private void clearDatabase() {
+        sessionService.doAsTransaction(() -> {
+            for (String table : List.of(Course.ENROLLMENT_TABLE_NAME, Grade.TABLE_NAME, Student.TABLE_NAME, Course.TABLE_NAME,
+                    CourseStats.TABLE_NAME)) {
+                sessionService.getSession().createNativeMutationQuery("DELETE FROM " + table).executeUpdate();
+            }
+            return true;
+        });
+        sessionService.getSessionFactory().getCache().evictAllRegions();
+    }
+
+    private long reservedStudentIds() {
+        return sessionService.doAsTransaction(() -> sessionService.getSession()
+                .createNativeQuery("SELECT next_val FROM id_blocks WHERE name = :name", Long.class)
+                .setParameter("name", Student.TABLE_NAME)
+                .getSingleResult()).orElseThrow();
+    }
+
     private void checkStudent(final Student student) {
         checkStudent(Optional.ofNullable(student));
     }
@@ -0,0 +1,58 @@
+package pl.edu.agh.iisg.to;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import pl.edu.agh.iisg.to.session.OperationStatistics;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Provides a {@link QueryBudget} parameter to test methods, which runs an operation and fails the test when it
+ * issues more SQL statements than budgeted or initializes the same lazy association repeatedly (N+1).
+ */
+public class QueryBudgetExtension implements ParameterResolver {
+
+    // lazy initializations of one association within an operation that are reported as N+1
+    public static final int N_PLUS_ONE_THRESHOLD = 3;
+
+    @Override
+    public boolean supportsParameter(final ParameterContext parameterContext, final ExtensionContext extensionContext) {
+        return parameterContext.getParameter().getType() == QueryBudget.class;
+    }
+
+    @Override
+    public Object resolveParameter(final ParameterContext parameterContext, final ExtensionContext extensionContext) {
+        return new QueryBudget(extensionContext.getDisplayName());
+    }
+
+    public static class QueryBudget {
+
+        private final String testName;
+
+        QueryBudget(final String testName) {
+            this.testName = testName;
+        }
+
+        public <T> T expect(final int maxStatements, final Supplier<T> operation) {
+            OperationStatistics statistics = OperationStatistics.start();
+            T result;
+            try {
+                result = operation.get();
+            } finally {
+                statistics.stop();
+            }
+            Map<String, Long> suspects = statistics.nPlusOneSuspects(N_PLUS_ONE_THRESHOLD);
+            if (!suspects.isEmpty()) {
+                fail(testName + ": N+1 lazy loading of " + suspects + " (" + statistics + ")");
+            }
+            assertTrue(statistics.statements() <= maxStatements,
+                    () -> testName + ": " + statistics.statements() + " statements, budget " + maxStatements + " (" + statistics + ")");
+            return result;
+        }
+    }
+}